@@ -0,0 +1,68 @@
+#!/usr/bin/env bash
+# Name search latency with and without the trigram index.
+# Usage: PGUSER=postgres ./run.sh [seconds] [clients]
+#
+# Runs in its own database (BENCH_DATABASE, default docseq_bench), which is
+# created if missing. It refuses to touch a database holding the application
+# schema, so the app's data and indexes are never modified.
+set -euo pipefail
+
+DURATION="${1:-60}"
+CLIENTS="${2:-8}"
+DIR="$(cd "$(dirname "$0")" && pwd)"
+WORK="$(mktemp -d)"
+export PGDATABASE="${BENCH_DATABASE:-docseq_bench}"
+
+if [ "$PGDATABASE" = "docse9" ]; then
+    echo "refusing to run against the application database ($PGDATABASE)" >&2
+    exit 1
+fi
+
+if ! psql -d postgres -tAc "SELECT 1 FROM pg_database WHERE datname = '$PGDATABASE'" | grep -q 1; then
+    createdb "$PGDATABASE"
+fi
+
+if [ "$(psql -tAc "SELECT to_regclass('tb_users') IS NOT NULL")" = "t" ]; then
+    echo "refusing to run: $PGDATABASE holds the application schema" >&2
+    exit 1
+fi
+
+create_index() {
+    psql -q -c "CREATE INDEX IF NOT EXISTS idx_files_town_name_trgm
+                ON tb_files USING GIN (town_id, lower(name) gin_trgm_ops) WHERE deleted_at IS NULL"
+}
+
+# the index comes back whichever step fails
+trap 'create_index || true; rm -rf "$WORK"' EXIT
+
+p95() {
+    cat "$1"/pgbench_log.* | awk '{ print $3 }' | sort -n \
+        | awk '{ v[NR] = $1 } END { printf "%.2f ms (n=%d)\n", v[int(NR * 0.95)] / 1000, NR }'
+}
+
+bench() {
+    local label="$1"
+    mkdir -p "$WORK/$label"
+    (cd "$WORK/$label" && pgbench -n -f "$DIR/search.sql" -T "$DURATION" -c "$CLIENTS" -l >/dev/null)
+    echo "$label p95: $(p95 "$WORK/$label")"
+}
+
+# results are only comparable on the same server version
+psql -tAc "SHOW server_version" | sed 's/^/server version: /'
+
+psql -q -v ON_ERROR_STOP=1 -f "$DIR/setup.sql"
+
+psql -q -c "DROP INDEX IF EXISTS idx_files_town_name_trgm"
+psql -q -c "ANALYZE tb_files"
+bench before
+
+create_index
+psql -q -c "ANALYZE tb_files"
+bench after
+
+psql -c "EXPLAIN (ANALYZE, BUFFERS)
+         SELECT f.file_id, f.name FROM tb_files f
+         WHERE f.town_id = '00000000-0000-0000-0000-00000000b001'
+           AND f.deleted_at IS NULL
+           AND lower(f.name) LIKE '%4711%' ESCAPE '\\'
+         LIMIT 20"
@@ -0,0 +1,14 @@
+-- One explorer keystroke: the page query and the count query Spring Data issues,
+-- shaped like the SQL Hibernate renders for NameSearch.
+\set n random(100, 9999)
+SELECT f.file_id, f.name
+FROM tb_files f
+WHERE f.town_id = '00000000-0000-0000-0000-00000000b001'
+  AND f.deleted_at IS NULL
+  AND lower(f.name) LIKE '%' || :n || '%' ESCAPE '\'
+OFFSET 0 LIMIT 20;
+SELECT count(f.file_id)
+FROM tb_files f
+WHERE f.town_id = '00000000-0000-0000-0000-00000000b001'
+  AND f.deleted_at IS NULL
+  AND lower(f.name) LIKE '%' || :n || '%' ESCAPE '\';
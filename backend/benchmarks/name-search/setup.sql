@@ -0,0 +1,28 @@
+-- Seeds one town with 1,000,000 files for the name search benchmark.
+-- Runs only in the dedicated benchmark database (see run.sh): it creates
+-- just the columns the search touches, shaped like the application schema.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+DROP TABLE IF EXISTS tb_files;
+
+CREATE TABLE tb_files (
+    file_id      uuid PRIMARY KEY,
+    name         varchar(255) NOT NULL,
+    town_id      uuid NOT NULL,
+    deleted_at   timestamp(6) with time zone
+);
+CREATE INDEX idx_files_town_id ON tb_files (town_id);
+
+INSERT INTO tb_files (file_id, name, town_id, deleted_at)
+SELECT gen_random_uuid(),
+       'Processo ' || lpad(i::text, 7, '0') || ' - '
+           || (ARRAY['Contrato', 'Licitação', 'Ofício', 'Decreto', 'Portaria', 'Memorando'])[1 + i % 6]
+           || '.pdf',
+       '00000000-0000-0000-0000-00000000b001',
+       -- about 5% of the rows sit in the trash
+       CASE WHEN i % 20 = 0 THEN now() END
+FROM generate_series(1, 1000000) AS i;
+
+ANALYZE tb_files;
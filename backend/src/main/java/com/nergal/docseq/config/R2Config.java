@@ -1,5 +1,8 @@
 package com.nergal.docseq.config;
 
+import java.net.URI;
+import java.time.Duration;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -7,13 +10,15 @@ import org.springframework.context.annotation.Profile;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
-import java.net.URI;
-
 @Configuration
 @Profile("prod")
 public class R2Config {
@@ -27,6 +32,28 @@ public class R2Config {
     @Value("${cloudflare.r2.endpoint}")
     private String endpoint;
 
+    @Value("${cloudflare.r2.timeouts.connect:5s}")
+    private Duration connectTimeout;
+
+    // longest silence tolerated on an open connection, not the length of a whole transfer
+    @Value("${cloudflare.r2.timeouts.socket:30s}")
+    private Duration socketTimeout;
+
+    @Value("${cloudflare.r2.timeouts.connection-acquisition:10s}")
+    private Duration connectionAcquisitionTimeout;
+
+    @Value("${cloudflare.r2.max-connections:128}")
+    private int maxConnections;
+
+    @Value("${cloudflare.r2.retry.max-attempts:4}")
+    private int retryMaxAttempts;
+
+    @Value("${cloudflare.r2.retry.base-delay:100ms}")
+    private Duration retryBaseDelay;
+
+    @Value("${cloudflare.r2.retry.max-backoff:5s}")
+    private Duration retryMaxBackoff;
+
     @Bean
     public S3Client s3Client() {
         AwsBasicCredentials credentials = AwsBasicCredentials.create(accessKey, secretKey);
@@ -35,11 +62,27 @@ public class R2Config {
                 .pathStyleAccessEnabled(true)
                 .build();
 
+        // Puts to content-addressed keys, part uploads, reads and deletes are safe to repeat,
+        // so the SDK may retry them; full jitter spreads the retries out. Creating and
+        // completing a multipart upload are not, and opt out per request in R2StorageService.
+        ClientOverrideConfiguration overrides = ClientOverrideConfiguration.builder()
+                .retryStrategy(AwsRetryStrategy.standardRetryStrategy().toBuilder()
+                        .maxAttempts(retryMaxAttempts)
+                        .backoffStrategy(BackoffStrategy.exponentialDelay(retryBaseDelay, retryMaxBackoff))
+                        .build())
+                .build();
+
         return S3Client.builder()
                 .endpointOverride(URI.create(endpoint))
                 .region(Region.AWS_GLOBAL)
                 .credentialsProvider(StaticCredentialsProvider.create(credentials))
                 .serviceConfiguration(s3Config)
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .connectionTimeout(connectTimeout)
+                        .socketTimeout(socketTimeout)
+                        .connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+                        .maxConnections(maxConnections))
+                .overrideConfiguration(overrides)
                 .build();
     }
 
@@ -53,4 +96,4 @@ public class R2Config {
                 .credentialsProvider(StaticCredentialsProvider.create(credentials))
                 .build();
     }
-}
\ No newline at end of file
+}
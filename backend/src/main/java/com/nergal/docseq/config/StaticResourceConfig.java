@@ -5,6 +5,9 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import com.nergal.docseq.helpers.http.FileRangeResponder;
+import com.nergal.docseq.helpers.http.ImmutableContent;
+
 @Configuration
 @Profile("dev")
 public class StaticResourceConfig implements WebMvcConfigurer {
@@ -13,6 +16,8 @@ public class StaticResourceConfig implements WebMvcConfigurer {
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         registry
                 .addResourceHandler("/uploads/**")
-                .addResourceLocations("file:uploads/");
+                .addResourceLocations("file:uploads/")
+                .setCacheControl(ImmutableContent.PUBLIC)
+                .setEtagGenerator(resource -> FileRangeResponder.eTagFor(resource.getFilename()));
     }
 }
@@ -0,0 +1,89 @@
+package com.nergal.docseq.config;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.util.unit.DataSize;
+
+import com.nergal.docseq.services.CachingStorageService;
+import com.nergal.docseq.services.InstrumentedStorageService;
+import com.nergal.docseq.services.R2StorageService;
+import com.nergal.docseq.services.ResilientStorageService;
+import com.nergal.docseq.services.StorageService;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Assembles the StorageService the rest of the app sees on top of R2
+@Configuration
+@Profile("prod")
+public class StorageConfig {
+
+    @Value("${storage.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${storage.cache.directory:${java.io.tmpdir}/docseq-cache}")
+    private String cacheDirectory;
+
+    @Value("${storage.cache.max-size:10GB}")
+    private DataSize cacheMaxSize;
+
+    @Value("${storage.cache.fill-concurrency:2}")
+    private int cacheFillConcurrency;
+
+    @Value("${storage.circuit-breaker.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+
+    @Value("${storage.circuit-breaker.window:30s}")
+    private Duration breakerWindow;
+
+    @Value("${storage.circuit-breaker.minimum-calls:20}")
+    private int breakerMinimumCalls;
+
+    @Value("${storage.circuit-breaker.open-duration:30s}")
+    private Duration breakerOpenDuration;
+
+    @Value("${storage.bulkhead.max-concurrent-calls:32}")
+    private int bulkheadMaxConcurrentCalls;
+
+    @Value("${storage.bulkhead.max-wait:500ms}")
+    private Duration bulkheadMaxWait;
+
+    @Bean
+    @Primary
+    public StorageService storageService(R2StorageService r2StorageService, MeterRegistry meterRegistry) {
+        StorageService guarded = new ResilientStorageService(
+                r2StorageService,
+                "r2",
+                CircuitBreakerConfig.custom()
+                        .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+                        .slidingWindowSize((int) breakerWindow.toSeconds())
+                        .minimumNumberOfCalls(breakerMinimumCalls)
+                        .failureRateThreshold(failureRateThreshold)
+                        .waitDurationInOpenState(breakerOpenDuration)
+                        .build(),
+                BulkheadConfig.custom()
+                        .maxConcurrentCalls(bulkheadMaxConcurrentCalls)
+                        .maxWaitDuration(bulkheadMaxWait)
+                        .build(),
+                meterRegistry);
+
+        // timed below the cache, so the metrics describe R2 itself
+        StorageService r2 = new InstrumentedStorageService(guarded, "r2", meterRegistry);
+        if (!cacheEnabled) {
+            return r2;
+        }
+        return new CachingStorageService(
+                r2,
+                Paths.get(cacheDirectory),
+                cacheMaxSize,
+                cacheFillConcurrency,
+                meterRegistry);
+    }
+}
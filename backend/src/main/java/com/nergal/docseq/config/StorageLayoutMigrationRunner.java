@@ -0,0 +1,35 @@
+package com.nergal.docseq.config;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.nergal.docseq.services.LocalStorageLayoutMigration;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Started with --migrate-storage-layout; runs in the background so startup is not held up
+@Slf4j
+@Configuration
+@Profile("dev")
+public class StorageLayoutMigrationRunner implements ApplicationRunner {
+
+    private final LocalStorageLayoutMigration migration;
+
+    public StorageLayoutMigrationRunner(LocalStorageLayoutMigration migration) {
+        this.migration = migration;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("migrate-storage-layout")) {
+            return;
+        }
+
+        log.info("Migrating local storage to the sharded layout");
+        Thread.ofVirtual()
+                .name("storage-layout-migration")
+                .start(migration::migrate);
+    }
+}
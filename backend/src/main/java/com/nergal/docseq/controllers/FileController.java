@@ -1,8 +1,12 @@
 package com.nergal.docseq.controllers;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.UUID;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
@@ -11,26 +15,55 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.nergal.docseq.dto.PageResponse;
+import com.nergal.docseq.dto.files.DirectUploadRequestDTO;
+import com.nergal.docseq.dto.files.DirectUploadResponseDTO;
+import com.nergal.docseq.dto.files.FileDownloadDTO;
 import com.nergal.docseq.dto.files.FileResponseDTO;
+import com.nergal.docseq.dto.files.FileSearchResultDTO;
+import com.nergal.docseq.dto.files.UploadSessionRequestDTO;
+import com.nergal.docseq.dto.files.UploadSessionResponseDTO;
+import com.nergal.docseq.dto.files.ZipImportSummaryDTO;
 import com.nergal.docseq.dto.folders.FolderUpdateDTO;
 import com.nergal.docseq.services.FileService;
+import com.nergal.docseq.services.StorageService;
+import com.nergal.docseq.services.UploadSessionService;
+import com.nergal.docseq.services.ZipImportService;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import tools.jackson.databind.ObjectMapper;
 
 @RestController
 @RequestMapping("/files")
 public class FileController {
 
     private final FileService fileService;
+    private final StorageService storageService;
+    private final UploadSessionService uploadSessionService;
+    private final ZipImportService zipImportService;
+    private final ObjectMapper objectMapper;
 
-    public FileController(FileService fileService) {
+    public FileController(
+            FileService fileService,
+            StorageService storageService,
+            UploadSessionService uploadSessionService,
+            ZipImportService zipImportService,
+            ObjectMapper objectMapper) {
         this.fileService = fileService;
+        this.storageService = storageService;
+        this.uploadSessionService = uploadSessionService;
+        this.zipImportService = zipImportService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -42,6 +75,79 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/uploads")
+    public ResponseEntity<DirectUploadResponseDTO> reserveUpload(
+            @Valid @RequestBody DirectUploadRequestDTO dto,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(fileService.reserveUpload(dto, token));
+    }
+
+    @PostMapping("/uploads/{reservationId}/commit")
+    public ResponseEntity<FileResponseDTO> commitUpload(
+            @PathVariable UUID reservationId,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(fileService.commitUpload(reservationId, token));
+    }
+
+    @PostMapping("/upload-sessions")
+    public ResponseEntity<UploadSessionResponseDTO> createUploadSession(
+            @Valid @RequestBody UploadSessionRequestDTO dto,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(uploadSessionService.create(dto, token));
+    }
+
+    @GetMapping("/upload-sessions/{sessionId}")
+    public ResponseEntity<UploadSessionResponseDTO> uploadSessionStatus(
+            @PathVariable UUID sessionId,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(uploadSessionService.status(sessionId, token));
+    }
+
+    @PutMapping(value = "/upload-sessions/{sessionId}/chunks/{chunk}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponseDTO> uploadChunk(
+            @PathVariable UUID sessionId,
+            @PathVariable int chunk,
+            @RequestHeader(value = "X-Chunk-SHA256", required = false) String sha256,
+            InputStream body,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(uploadSessionService.appendChunk(sessionId, chunk, sha256, body, token));
+    }
+
+    @PostMapping("/upload-sessions/{sessionId}/complete")
+    public ResponseEntity<FileResponseDTO> completeUploadSession(
+            @PathVariable UUID sessionId,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(uploadSessionService.complete(sessionId, token));
+    }
+
+    @DeleteMapping("/upload-sessions/{sessionId}")
+    public ResponseEntity<Void> abortUploadSession(
+            @PathVariable UUID sessionId,
+            JwtAuthenticationToken token) {
+        uploadSessionService.abort(sessionId, token);
+        return ResponseEntity.noContent().build();
+    }
+
+    // Streams one NDJSON line per entry as it finishes, then the summary
+    @PostMapping(value = "/imports", consumes = { "application/zip", MediaType.APPLICATION_OCTET_STREAM_VALUE })
+    public void importZip(
+            @RequestParam UUID folderId,
+            InputStream body,
+            JwtAuthenticationToken token,
+            HttpServletResponse response) {
+        ZipImportSummaryDTO summary = zipImportService.importZip(
+                body, folderId, token, entry -> writeLine(response, entry));
+        writeLine(response, summary);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<PageResponse<FileSearchResultDTO>> search(
+            @RequestParam String q,
+            Pageable pageable,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(fileService.search(q, pageable, token));
+    }
+
     @DeleteMapping("/{fileId}")
     public ResponseEntity<Void> softDelete(
             @PathVariable UUID fileId,
@@ -99,4 +205,27 @@ public class FileController {
         String url = fileService.generateViewUrl(fileId, token);
         return ResponseEntity.ok(Map.of("url", url));
     }
+
+    // Lookup runs in its own transaction; the bytes are streamed after it has ended
+    @GetMapping("/{fileId}/download")
+    public void download(
+            @PathVariable UUID fileId,
+            JwtAuthenticationToken token,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        FileDownloadDTO file = fileService.getDownload(fileId, token);
+        storageService.serve(file, request, response);
+    }
+
+    private void writeLine(HttpServletResponse response, Object value) {
+        try {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            OutputStream out = response.getOutputStream();
+            out.write(objectMapper.writeValueAsBytes(value));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            // the client went away; the import still runs to completion
+        }
+    }
 }
@@ -1,9 +1,13 @@
 package com.nergal.docseq.controllers;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -16,12 +20,15 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.nergal.docseq.dto.folders.FolderArchiveDTO;
 import com.nergal.docseq.dto.folders.FolderContentResponse;
 import com.nergal.docseq.dto.folders.FolderRequestDTO;
+import com.nergal.docseq.dto.folders.FolderResponseDTO;
 import com.nergal.docseq.dto.folders.FolderTreeResponseDTO;
 import com.nergal.docseq.dto.folders.FolderUpdateDTO;
 import com.nergal.docseq.services.FolderService;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
 @RestController
@@ -89,6 +96,34 @@ public class FolderController {
         return ResponseEntity.ok(folderService.getFolderTree(token));
     }
 
+    /**
+     * Ancestor chain of a folder (breadcrumb), root first
+     */
+    @GetMapping("/{folderId}/path")
+    public ResponseEntity<List<FolderResponseDTO>> path(
+            @PathVariable UUID folderId,
+            JwtAuthenticationToken token) {
+        return ResponseEntity.ok(folderService.getPath(folderId, token));
+    }
+
+    /**
+     * Download the folder and everything below it as a ZIP
+     */
+    @GetMapping("/{folderId}/download")
+    public void download(
+            @PathVariable UUID folderId,
+            JwtAuthenticationToken token,
+            HttpServletResponse response) throws IOException {
+        FolderArchiveDTO archive = folderService.getArchive(folderId, token);
+
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(archive.name() + ".zip", StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        folderService.writeArchive(archive, response.getOutputStream());
+    }
+
     /**
      * Favorite/unfavorite folder
      */
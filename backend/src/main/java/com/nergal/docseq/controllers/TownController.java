@@ -10,13 +10,16 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.nergal.docseq.dto.towns.TownContentResponse;
+import com.nergal.docseq.dto.towns.TownQuotaDTO;
 import com.nergal.docseq.dto.towns.TownRequestDTO;
 import com.nergal.docseq.dto.towns.TownUpdateDTO;
+import com.nergal.docseq.dto.towns.TownUsageDTO;
 import com.nergal.docseq.services.TownService;
 
 import jakarta.validation.Valid;
@@ -51,6 +54,18 @@ public class TownController {
         return ResponseEntity.ok().build();
     }
 
+    @GetMapping("/{id}/usage")
+    @PreAuthorize("hasAuthority('SCOPE_admin')")
+    public ResponseEntity<TownUsageDTO> getUsage(@PathVariable UUID id) {
+        return ResponseEntity.ok(townService.getUsage(id));
+    }
+
+    @PutMapping("/{id}/quota")
+    @PreAuthorize("hasAuthority('SCOPE_admin')")
+    public ResponseEntity<TownUsageDTO> updateQuota(@PathVariable UUID id, @Valid @RequestBody TownQuotaDTO dto) {
+        return ResponseEntity.ok(townService.updateQuota(id, dto));
+    }
+
     @DeleteMapping("/{id}")
     @PreAuthorize("hasAuthority('SCOPE_admin')")
     public ResponseEntity<Void> deleteTown(@PathVariable UUID id) {
@@ -0,0 +1,22 @@
+package com.nergal.docseq.dto.files;
+
+import java.util.UUID;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+public record DirectUploadRequestDTO(
+
+        @NotBlank @Size(min = 1, max = 255) String name,
+
+        @NotNull @Positive Long size,
+
+        @NotBlank String contentType,
+
+        @NotBlank @Pattern(regexp = "[0-9a-fA-F]{64}") String sha256,
+
+        UUID folderId) {
+}
@@ -0,0 +1,12 @@
+package com.nergal.docseq.dto.files;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+public record DirectUploadResponseDTO(
+        UUID reservationId,
+        String url,
+        Map<String, String> headers,
+        Instant expiresAt) {
+}
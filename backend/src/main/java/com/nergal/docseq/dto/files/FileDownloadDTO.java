@@ -0,0 +1,11 @@
+package com.nergal.docseq.dto.files;
+
+import java.util.UUID;
+
+public record FileDownloadDTO(
+        UUID fileId,
+        String name,
+        String contentType,
+        Long size,
+        String objectKey) {
+}
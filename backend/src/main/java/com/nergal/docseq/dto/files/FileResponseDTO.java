@@ -15,5 +15,6 @@ public record FileResponseDTO(
                 Instant updatedAt,
                 Instant deletedAt,
                 UUID folderId,
-                String uploadedBy) {
+                String uploadedBy,
+                String thumbnailUrl) {
 }
@@ -0,0 +1,12 @@
+package com.nergal.docseq.dto.files;
+
+import java.util.UUID;
+
+// Matched words in the snippet are wrapped in « and »
+public record FileSearchResultDTO(
+        UUID fileId,
+        String name,
+        UUID folderId,
+        String snippet,
+        float rank) {
+}
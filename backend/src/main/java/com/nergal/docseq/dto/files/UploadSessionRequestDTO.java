@@ -0,0 +1,19 @@
+package com.nergal.docseq.dto.files;
+
+import java.util.UUID;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+public record UploadSessionRequestDTO(
+
+        @NotBlank @Size(min = 1, max = 255) String name,
+
+        @NotNull @Positive Long size,
+
+        @NotBlank String contentType,
+
+        UUID folderId) {
+}
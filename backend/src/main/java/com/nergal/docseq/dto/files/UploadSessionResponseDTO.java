@@ -0,0 +1,14 @@
+package com.nergal.docseq.dto.files;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// receivedBytes and nextChunk tell the client where to resume
+public record UploadSessionResponseDTO(
+        UUID sessionId,
+        Long size,
+        Long receivedBytes,
+        Integer nextChunk,
+        Long maxChunkSize,
+        Instant expiresAt) {
+}
@@ -0,0 +1,17 @@
+package com.nergal.docseq.dto.files;
+
+import java.util.UUID;
+
+// One line of the import progress stream; error is set when status is FAILED or SKIPPED
+public record ZipImportEntryDTO(
+        String path,
+        Status status,
+        UUID fileId,
+        String error) {
+
+    public enum Status {
+        IMPORTED,
+        SKIPPED,
+        FAILED
+    }
+}
@@ -0,0 +1,11 @@
+package com.nergal.docseq.dto.files;
+
+import java.util.List;
+
+public record ZipImportSummaryDTO(
+        int imported,
+        int skipped,
+        int failed,
+        int foldersCreated,
+        List<ZipImportEntryDTO> failures) {
+}
@@ -0,0 +1,20 @@
+package com.nergal.docseq.dto.folders;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+ * Layout of a folder ZIP: directory paths end with '/'. Files are not listed;
+ * they are paged in by folder while the ZIP is written, under folderPaths.
+ */
+public record FolderArchiveDTO(
+        String name,
+        UUID rootId,
+        String subtreePattern,
+        List<String> directories,
+        Map<UUID, String> folderPaths) {
+
+    public record Entry(String path, String objectKey) {
+    }
+}
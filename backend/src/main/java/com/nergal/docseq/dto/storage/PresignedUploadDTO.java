@@ -0,0 +1,11 @@
+package com.nergal.docseq.dto.storage;
+
+import java.time.Instant;
+import java.util.Map;
+
+// Headers must be sent exactly as given; they are part of the signature
+public record PresignedUploadDTO(
+        String url,
+        Map<String, String> headers,
+        Instant expiresAt) {
+}
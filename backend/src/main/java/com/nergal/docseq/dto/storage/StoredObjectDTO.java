@@ -0,0 +1,8 @@
+package com.nergal.docseq.dto.storage;
+
+// checksumSha256 is hex encoded, or null when the backend did not record one
+public record StoredObjectDTO(
+        long size,
+        String contentType,
+        String checksumSha256) {
+}
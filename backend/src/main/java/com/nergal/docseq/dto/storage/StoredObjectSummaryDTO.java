@@ -0,0 +1,9 @@
+package com.nergal.docseq.dto.storage;
+
+import java.time.Instant;
+
+public record StoredObjectSummaryDTO(
+        String key,
+        long size,
+        Instant lastModified) {
+}
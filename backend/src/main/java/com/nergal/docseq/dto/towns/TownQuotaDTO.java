@@ -0,0 +1,8 @@
+package com.nergal.docseq.dto.towns;
+
+import jakarta.validation.constraints.PositiveOrZero;
+
+// A null quota restores the configured default
+public record TownQuotaDTO(
+        @PositiveOrZero Long quotaBytes) {
+}
@@ -0,0 +1,13 @@
+package com.nergal.docseq.dto.towns;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// quotaBytes is the effective limit, customQuota tells whether it overrides the default
+public record TownUsageDTO(
+        UUID townId,
+        long usedBytes,
+        long quotaBytes,
+        boolean customQuota,
+        Instant reconciledAt) {
+}
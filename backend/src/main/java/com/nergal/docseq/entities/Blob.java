@@ -0,0 +1,75 @@
+package com.nergal.docseq.entities;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/*
+ * Stored object shared by every file with the same content.
+ * Files point at it through content_hash; the object is removed from
+ * storage only when the last reference goes away.
+ */
+@Entity
+@Table(name = "tb_blobs")
+public class Blob {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "object_key")
+    private String objectKey;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Long refCount;
+
+    @Column(name = "thumbnail_key")
+    private String thumbnailKey;
+
+    // set once rendering was attempted, whether or not it produced a thumbnail
+    @Column(name = "thumbnail_checked_at")
+    private Instant thumbnailCheckedAt;
+
+    @CreationTimestamp
+    private Instant createdAt;
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getObjectKey() {
+        return objectKey;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public Long getRefCount() {
+        return refCount;
+    }
+
+    public String getThumbnailKey() {
+        return thumbnailKey;
+    }
+
+    public Instant getThumbnailCheckedAt() {
+        return thumbnailCheckedAt;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setObjectKey(String objectKey) {
+        this.objectKey = objectKey;
+    }
+}
@@ -0,0 +1,65 @@
+package com.nergal.docseq.entities;
+
+import java.time.Instant;
+
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.type.SqlTypes;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapsId;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+
+/*
+ * Text extracted from a blob, kept apart from tb_blobs so loading a blob
+ * never drags the text along. The content_tsv column and its GIN index are
+ * created in data.sql as a generated column over content_text.
+ */
+@Entity
+@Table(name = "tb_blob_contents")
+public class BlobContent {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "content_hash")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Blob blob;
+
+    @JdbcTypeCode(SqlTypes.LONG32VARCHAR)
+    @Column(name = "content_text", nullable = false)
+    private String contentText;
+
+    @CreationTimestamp
+    private Instant indexedAt;
+
+    protected BlobContent() {
+    }
+
+    public BlobContent(Blob blob, String contentText) {
+        this.blob = blob;
+        this.contentText = contentText;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getContentText() {
+        return contentText;
+    }
+
+    public Instant getIndexedAt() {
+        return indexedAt;
+    }
+}
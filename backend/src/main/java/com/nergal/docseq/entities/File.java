@@ -12,12 +12,16 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 
 @Entity
-@Table(name = "tb_files")
+@Table(name = "tb_files", indexes = {
+      @Index(name = "idx_files_object_key", columnList = "object_key"),
+      @Index(name = "idx_files_town_id", columnList = "town_id")
+})
 public class File {
 
    @Id
@@ -40,6 +44,10 @@ public class File {
    @Column(nullable = false, name = "object_key")
    private String objectKey;
 
+   // copied from the blob so listings need no join
+   @Column(name = "thumbnail_key")
+   private String thumbnailKey;
+
    /*
     * ======================
     * Relationships
@@ -54,6 +62,11 @@ public class File {
    @JoinColumn(name = "town_id", nullable = false)
    private Town town;
 
+   // Shared content; null for files stored before content addressing
+   @ManyToOne(fetch = FetchType.LAZY)
+   @JoinColumn(name = "content_hash")
+   private Blob blob;
+
    /*
     * ======================
     * Users audit
@@ -116,6 +129,10 @@ public class File {
       return objectKey;
    }
 
+   public String getThumbnailKey() {
+      return thumbnailKey;
+   }
+
    public Folder getFolder() {
       return folder;
    }
@@ -124,6 +141,10 @@ public class File {
       return town;
    }
 
+   public Blob getBlob() {
+      return blob;
+   }
+
    public User getUploadedBy() {
       return uploadedBy;
    }
@@ -172,6 +193,10 @@ public class File {
       this.objectKey = objectKey;
    }
 
+   public void setThumbnailKey(String thumbnailKey) {
+      this.thumbnailKey = thumbnailKey;
+   }
+
    public void setFolder(Folder folder) {
       this.folder = folder;
    }
@@ -180,6 +205,10 @@ public class File {
       this.town = town;
    }
 
+   public void setBlob(Blob blob) {
+      this.blob = blob;
+   }
+
    public void setUploadedBy(User uploadedBy) {
       this.uploadedBy = uploadedBy;
    }
@@ -2,6 +2,7 @@ package com.nergal.docseq.entities;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -47,6 +48,10 @@ public class Folder {
    @OneToMany(mappedBy = "parent")
    private List<Folder> children = new ArrayList<>();
 
+   // Ids of all ancestors, root first: "/" for a root folder, "/a/b/" under a/b
+   @Column(length = 4096)
+   private String path;
+
    /*
     * ======================
     * Organizational scope
@@ -113,6 +118,27 @@ public class Folder {
       return children;
    }
 
+   public String getPath() {
+      return path;
+   }
+
+   // Prefix shared by the paths of every descendant
+   public String getSubtreePath() {
+      return path + folderId + "/";
+   }
+
+   public boolean isAncestorOf(Folder other) {
+      return other.getPath().startsWith(getSubtreePath());
+   }
+
+   // Root first, parent last
+   public List<UUID> getAncestorIds() {
+      return Arrays.stream(path.split("/"))
+            .filter(id -> !id.isEmpty())
+            .map(UUID::fromString)
+            .toList();
+   }
+
    public Town getTown() {
       return town;
    }
@@ -151,6 +177,7 @@ public class Folder {
 
    public void setParent(Folder parent) {
       this.parent = parent;
+      this.path = parent != null ? parent.getSubtreePath() : "/";
    }
 
    public void setTown(Town town) {
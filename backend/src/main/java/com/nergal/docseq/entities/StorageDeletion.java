@@ -0,0 +1,96 @@
+package com.nergal.docseq.entities;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/*
+ * Outbox row for a storage object that is no longer referenced. Written in
+ * the same transaction that drops the last reference and drained by
+ * StorageDeletionWorker, so a rollback never loses or orphans an object.
+ */
+@Entity
+@Table(name = "tb_storage_deletions", indexes = {
+        @Index(name = "idx_storage_deletions_next_attempt", columnList = "next_attempt_at"),
+        @Index(name = "idx_storage_deletions_content_hash", columnList = "content_hash")
+})
+public class StorageDeletion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "deletion_id")
+    private UUID deletionId;
+
+    @Column(name = "object_key", nullable = false)
+    private String objectKey;
+
+    // null for objects stored before content addressing
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt = Instant.now();
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    protected StorageDeletion() {
+    }
+
+    public StorageDeletion(String objectKey, String contentHash) {
+        this.objectKey = objectKey;
+        this.contentHash = contentHash;
+    }
+
+    public UUID getDeletionId() {
+        return deletionId;
+    }
+
+    public String getObjectKey() {
+        return objectKey;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void scheduleRetry(Instant nextAttemptAt, String lastError) {
+        this.attempts++;
+        this.nextAttemptAt = nextAttemptAt;
+        this.lastError = lastError != null && lastError.length() > 1000
+                ? lastError.substring(0, 1000)
+                : lastError;
+    }
+}
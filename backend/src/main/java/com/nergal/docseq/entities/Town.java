@@ -3,6 +3,8 @@ package com.nergal.docseq.entities;
 import java.util.List;
 import java.util.UUID;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -30,6 +32,11 @@ public class Town {
     @Column(name = "image_url", nullable = false)
     private String imageUrl;
 
+    // bumped only through TownRepository.nextTreeVersion, so a stale entity never writes it back
+    @ColumnDefault("0")
+    @Column(name = "tree_version", nullable = false, insertable = false, updatable = false)
+    private long treeVersion;
+
     @OneToMany(mappedBy = "town", cascade = CascadeType.REMOVE, orphanRemoval = true)
     private List<User> users;
 
@@ -64,4 +71,8 @@ public class Town {
     public void setImageUrl(String imageUrl) {
         this.imageUrl = imageUrl;
     }
+
+    public long getTreeVersion() {
+        return treeVersion;
+    }
 }
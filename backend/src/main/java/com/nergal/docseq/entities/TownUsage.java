@@ -0,0 +1,92 @@
+package com.nergal.docseq.entities;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.MapsId;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+
+/*
+ * Running total of bytes stored by a town, kept apart from tb_town so the
+ * counter updates never contend with reads of the town itself. Rows are
+ * created on first upload; a null quota means the configured default applies.
+ * used_bytes includes reserved_bytes, the part whose File rows have not
+ * committed yet.
+ */
+@Entity
+@Table(name = "tb_town_usage")
+public class TownUsage {
+
+    @Id
+    @Column(name = "town_id")
+    private UUID townId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "town_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Town town;
+
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    @ColumnDefault("0")
+    @Column(name = "reserved_bytes", nullable = false)
+    private long reservedBytes;
+
+    @Column(name = "quota_bytes")
+    private Long quotaBytes;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Column(name = "reconciled_at")
+    private Instant reconciledAt;
+
+    protected TownUsage() {
+    }
+
+    public TownUsage(Town town) {
+        this.town = town;
+        this.updatedAt = Instant.now();
+    }
+
+    public UUID getTownId() {
+        return townId;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public Long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    public void setQuotaBytes(Long quotaBytes) {
+        this.quotaBytes = quotaBytes;
+        this.updatedAt = Instant.now();
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Instant getReconciledAt() {
+        return reconciledAt;
+    }
+}
@@ -0,0 +1,152 @@
+package com.nergal.docseq.entities;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+
+/*
+ * A resumable upload in progress. Chunks are appended in order to a staging
+ * file on the instance's disk; receivedBytes is what the client resumes from.
+ */
+@Entity
+@Table(name = "tb_upload_sessions", indexes = @Index(name = "idx_upload_sessions_expires_at", columnList = "expires_at"))
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "session_id")
+    private UUID sessionId;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(nullable = false, name = "content_type")
+    private String contentType;
+
+    @Column(nullable = false, name = "received_bytes")
+    private Long receivedBytes = 0L;
+
+    @Column(nullable = false, name = "next_chunk")
+    private Integer nextChunk = 0;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "folder_id", nullable = false)
+    private Folder folder;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "town_id", nullable = false)
+    private Town town;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "created_by", nullable = false)
+    private User uploadedBy;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @CreationTimestamp
+    private Instant createdAt;
+
+    // Appends and completion from different instances serialize on this
+    @Version
+    private Long version = 0L;
+
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public Integer getNextChunk() {
+        return nextChunk;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    // Records a verified chunk appended at the current offset
+    public void chunkReceived(long length, Instant expiresAt) {
+        this.receivedBytes += length;
+        this.nextChunk++;
+        this.expiresAt = expiresAt;
+    }
+
+    public Folder getFolder() {
+        return folder;
+    }
+
+    public void setFolder(Folder folder) {
+        this.folder = folder;
+    }
+
+    public Town getTown() {
+        return town;
+    }
+
+    public void setTown(Town town) {
+        this.town = town;
+    }
+
+    public User getUploadedBy() {
+        return uploadedBy;
+    }
+
+    public void setUploadedBy(User uploadedBy) {
+        this.uploadedBy = uploadedBy;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
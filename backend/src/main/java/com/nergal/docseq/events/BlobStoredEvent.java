@@ -0,0 +1,7 @@
+package com.nergal.docseq.events;
+
+// Published when new content is written to storage; listeners run after commit
+public record BlobStoredEvent(
+        String contentHash,
+        String objectKey) {
+}
@@ -0,0 +1,46 @@
+package com.nergal.docseq.events;
+
+import java.util.UUID;
+
+import com.nergal.docseq.entities.Folder;
+
+// Published when a town's live folder tree changes; FolderTreeCache applies it after commit.
+// version is the town's tree_version after this change (see TownRepository.nextTreeVersion).
+public record FolderTreeChangedEvent(
+        UUID townId,
+        long version,
+        Change change,
+        UUID folderId,
+        UUID parentId,
+        String name,
+        boolean favorite) {
+
+    public enum Change {
+        // the folder was created, renamed, favorited or moved
+        SAVED,
+        // the folder and everything below it left the tree
+        REMOVED,
+        // too many folders changed to describe; the tree is read again
+        RELOAD
+    }
+
+    public static FolderTreeChangedEvent saved(Folder folder, long version) {
+        return new FolderTreeChangedEvent(
+                folder.getTown().getTownId(),
+                version,
+                Change.SAVED,
+                folder.getFolderId(),
+                folder.getParent() != null ? folder.getParent().getFolderId() : null,
+                folder.getName(),
+                folder.getFavorite());
+    }
+
+    public static FolderTreeChangedEvent removed(Folder folder, long version) {
+        return new FolderTreeChangedEvent(
+                folder.getTown().getTownId(), version, Change.REMOVED, folder.getFolderId(), null, null, false);
+    }
+
+    public static FolderTreeChangedEvent reload(UUID townId, long version) {
+        return new FolderTreeChangedEvent(townId, version, Change.RELOAD, null, null, null, false);
+    }
+}
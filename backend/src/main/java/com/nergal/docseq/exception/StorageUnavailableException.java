@@ -0,0 +1,7 @@
+package com.nergal.docseq.exception;
+
+public class StorageUnavailableException extends RuntimeException {
+    public StorageUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,48 @@
+package com.nergal.docseq.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.springframework.web.multipart.MultipartFile;
+
+public final class ContentHashes {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContentHashes() {
+    }
+
+    public static String sha256(MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            return sha256(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to hash uploaded file", e);
+        }
+    }
+
+    public static String sha256(String value) {
+        return HexFormat.of().formatHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.nergal.docseq.helpers.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.nergal.docseq.dto.folders.FolderTreeResponseDTO;
+
+/*
+ * Immutable copy of a town's live folder tree, kept as parallel arrays, at a
+ * given tree_version. Changes never touch an existing snapshot: with* methods
+ * return a new one at the version of the change, so readers need no locking.
+ */
+public final class FolderTreeSnapshot {
+
+    private final UUID[] ids;
+    private final UUID[] parentIds;
+    private final String[] names;
+    private final boolean[] favorites;
+    private final Map<UUID, Integer> index;
+    private final long version;
+
+    // built on first use; racing builds produce equal trees
+    private volatile List<FolderTreeResponseDTO> tree;
+
+    private FolderTreeSnapshot(
+            UUID[] ids,
+            UUID[] parentIds,
+            String[] names,
+            boolean[] favorites,
+            long version) {
+        this.ids = ids;
+        this.parentIds = parentIds;
+        this.names = names;
+        this.favorites = favorites;
+        this.version = version;
+        this.index = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], i);
+        }
+    }
+
+    public static FolderTreeSnapshot of(
+            long version,
+            List<UUID> ids,
+            List<UUID> parentIds,
+            List<String> names,
+            List<Boolean> favorites) {
+        boolean[] flags = new boolean[favorites.size()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = Boolean.TRUE.equals(favorites.get(i));
+        }
+        return new FolderTreeSnapshot(
+                ids.toArray(UUID[]::new),
+                parentIds.toArray(UUID[]::new),
+                names.toArray(String[]::new),
+                flags,
+                version);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean contains(UUID folderId) {
+        return index.containsKey(folderId);
+    }
+
+    // True when ancestorId is a strict ancestor of folderId; walks parents in memory
+    public boolean isAncestor(UUID ancestorId, UUID folderId) {
+        Integer current = index.get(folderId);
+        while (current != null) {
+            UUID parentId = parentIds[current];
+            if (parentId == null) {
+                return false;
+            }
+            if (parentId.equals(ancestorId)) {
+                return true;
+            }
+            current = index.get(parentId);
+        }
+        return false;
+    }
+
+    public List<FolderTreeResponseDTO> toTree() {
+        List<FolderTreeResponseDTO> built = tree;
+        if (built == null) {
+            built = build();
+            tree = built;
+        }
+        return built;
+    }
+
+    // Adds the folder or replaces its name, favorite flag and parent
+    public FolderTreeSnapshot withFolder(UUID folderId, UUID parentId, String name, boolean favorite, long version) {
+        Integer position = index.get(folderId);
+        int size = position != null ? ids.length : ids.length + 1;
+        int at = position != null ? position : ids.length;
+
+        UUID[] newIds = Arrays.copyOf(ids, size);
+        UUID[] newParentIds = Arrays.copyOf(parentIds, size);
+        String[] newNames = Arrays.copyOf(names, size);
+        boolean[] newFavorites = Arrays.copyOf(favorites, size);
+
+        newIds[at] = folderId;
+        newParentIds[at] = parentId;
+        newNames[at] = name;
+        newFavorites[at] = favorite;
+        return new FolderTreeSnapshot(newIds, newParentIds, newNames, newFavorites, version);
+    }
+
+    // Drops the folder and all of its descendants
+    public FolderTreeSnapshot withoutSubtree(UUID folderId, long version) {
+        if (!contains(folderId)) {
+            return new FolderTreeSnapshot(ids, parentIds, names, favorites, version);
+        }
+
+        boolean[] removed = new boolean[ids.length];
+        int kept = 0;
+        for (int i = 0; i < ids.length; i++) {
+            removed[i] = ids[i].equals(folderId) || isAncestor(folderId, ids[i]);
+            if (!removed[i]) {
+                kept++;
+            }
+        }
+
+        UUID[] newIds = new UUID[kept];
+        UUID[] newParentIds = new UUID[kept];
+        String[] newNames = new String[kept];
+        boolean[] newFavorites = new boolean[kept];
+        for (int i = 0, j = 0; i < ids.length; i++) {
+            if (!removed[i]) {
+                newIds[j] = ids[i];
+                newParentIds[j] = parentIds[i];
+                newNames[j] = names[i];
+                newFavorites[j] = favorites[i];
+                j++;
+            }
+        }
+        return new FolderTreeSnapshot(newIds, newParentIds, newNames, newFavorites, version);
+    }
+
+    private List<FolderTreeResponseDTO> build() {
+        List<List<FolderTreeResponseDTO>> children = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            children.add(new ArrayList<>());
+        }
+
+        FolderTreeResponseDTO[] nodes = new FolderTreeResponseDTO[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            nodes[i] = new FolderTreeResponseDTO(
+                    ids[i], names[i], favorites[i], Collections.unmodifiableList(children.get(i)));
+        }
+
+        List<FolderTreeResponseDTO> roots = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (parentIds[i] == null) {
+                roots.add(nodes[i]);
+            } else {
+                Integer parent = index.get(parentIds[i]);
+                if (parent != null) {
+                    children.get(parent).add(nodes[i]);
+                }
+            }
+        }
+        return Collections.unmodifiableList(roots);
+    }
+}
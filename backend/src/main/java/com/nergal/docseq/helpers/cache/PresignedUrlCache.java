@@ -0,0 +1,81 @@
+package com.nergal.docseq.helpers.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * Bounded LRU of presigned URLs keyed by object key. An entry is only handed
+ * out while it still has at least half of its signature lifetime left, so a
+ * cached URL is never close to expiring when the viewer opens it.
+ */
+public final class PresignedUrlCache {
+
+    private record Entry(String url, long reuseUntilNanos) {
+    }
+
+    private final long reuseForNanos;
+    private final Map<String, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+
+    public PresignedUrlCache(int maxEntries, Duration signatureDuration, MeterRegistry registry) {
+        this.reuseForNanos = signatureDuration.toNanos() / 2;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("storage.presigned.url.cache")
+                .tag("result", "hit")
+                .register(registry);
+        this.misses = Counter.builder("storage.presigned.url.cache")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("storage.presigned.url.cache.size", this, PresignedUrlCache::size)
+                .register(registry);
+    }
+
+    public String get(String objectKey, Supplier<String> presign) {
+        long now = System.nanoTime();
+
+        synchronized (entries) {
+            Entry entry = entries.get(objectKey);
+            if (entry != null && now - entry.reuseUntilNanos() < 0) {
+                hits.increment();
+                return entry.url();
+            }
+            if (entry != null) {
+                entries.remove(objectKey);
+            }
+        }
+
+        // signed outside the lock; a concurrent miss on the same key just signs twice
+        misses.increment();
+        String url = presign.get();
+
+        synchronized (entries) {
+            entries.put(objectKey, new Entry(url, now + reuseForNanos));
+        }
+        return url;
+    }
+
+    public void invalidate(String objectKey) {
+        synchronized (entries) {
+            entries.remove(objectKey);
+        }
+    }
+
+    private double size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
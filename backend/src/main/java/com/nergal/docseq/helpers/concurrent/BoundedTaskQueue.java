@@ -0,0 +1,68 @@
+package com.nergal.docseq.helpers.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Fixed pool with a bounded queue for best-effort background work. Submitting
+ * never blocks: tasks that do not fit are dropped and left for a catch-up job,
+ * and a key already queued or running is not queued twice.
+ */
+@Slf4j
+public final class BoundedTaskQueue {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    public BoundedTaskQueue(String name, int threads, int capacity) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                Thread.ofPlatform().name(name + "-", 0).daemon().factory());
+    }
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    // Returns false when the task was dropped
+    public boolean submit(String key, Task task) {
+        if (!queued.add(key)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("{} task for {} failed: {}", name, key, e.getMessage());
+                } finally {
+                    queued.remove(key);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            queued.remove(key);
+            return false;
+        }
+    }
+
+    public int remainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
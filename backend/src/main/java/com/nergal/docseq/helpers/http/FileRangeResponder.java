@@ -0,0 +1,174 @@
+package com.nergal.docseq.helpers.http;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.nergal.docseq.exception.NotFoundException;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+ * Serves a file from disk with conditional request and single Range support.
+ * Bytes go out through Tomcat's sendfile when the connector offers it, and
+ * through FileChannel.transferTo otherwise, so they never pass through the heap.
+ */
+public final class FileRangeResponder {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private FileRangeResponder() {
+    }
+
+    // Stored objects are never rewritten under the same key, so the key makes a strong validator
+    public static String eTagFor(String storageKey) {
+        return "\"" + StringUtils.stripFilenameExtension(StringUtils.getFilename(storageKey)) + "\"";
+    }
+
+    /**
+     * @return the number of body bytes sent, or handed to sendfile
+     */
+    public static long write(
+            Path path,
+            String contentType,
+            String fileName,
+            String eTag,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        return write(path, contentType, fileName, eTag, request, response, true);
+    }
+
+    /**
+     * Tomcat opens a sendfile only after the servlet returns, so callers that
+     * may remove the file once this returns pass {@code sendfile = false}.
+     *
+     * @return the number of body bytes sent, or handed to sendfile
+     */
+    public static long write(
+            Path path,
+            String contentType,
+            String fileName,
+            String eTag,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            boolean sendfile) throws IOException {
+
+        if (!Files.isRegularFile(path)) {
+            throw new NotFoundException("File content not found");
+        }
+
+        long length = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        // set first so a 304 carries it too
+        response.setHeader(HttpHeaders.CACHE_CONTROL, ImmutableContent.PRIVATE.getHeaderValue());
+
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return 0;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                .filename(fileName, StandardCharsets.UTF_8)
+                .build()
+                .toString());
+
+        long start = 0;
+        long end = length - 1;
+
+        HttpRange range = requestedRange(request, eTag, lastModified);
+        if (range != null) {
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return 0;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return 0;
+        }
+
+        if (sendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return count;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            return count - remaining;
+        }
+    }
+
+    // Only a single range is honored; multi-range requests get the whole file
+    private static HttpRange requestedRange(HttpServletRequest request, String eTag, long lastModified) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null || !rangeStillValid(request, eTag, lastModified)) {
+            return null;
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return ranges.size() == 1 ? ranges.get(0) : null;
+    }
+
+    private static boolean rangeStillValid(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(eTag);
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            return lastModified / 1000 <= request.getDateHeader(HttpHeaders.IF_RANGE) / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.nergal.docseq.helpers.http;
+
+import java.time.Duration;
+
+import org.springframework.http.CacheControl;
+
+// Cache policies for stored objects: a key is never given new bytes, so clients may keep them for good
+public final class ImmutableContent {
+
+    private static final Duration MAX_AGE = Duration.ofDays(365);
+
+    // for unauthenticated or signed URLs, which shared caches may keep
+    public static final CacheControl PUBLIC = CacheControl.maxAge(MAX_AGE).cachePublic().immutable();
+
+    // for responses that required a login
+    public static final CacheControl PRIVATE = CacheControl.maxAge(MAX_AGE).cachePrivate().immutable();
+
+    private ImmutableContent() {
+    }
+}
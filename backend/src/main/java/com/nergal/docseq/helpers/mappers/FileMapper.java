@@ -9,6 +9,10 @@ public final class FileMapper {
     }
 
     public static FileResponseDTO toResponse(File entity) {
+        return toResponse(entity, null);
+    }
+
+    public static FileResponseDTO toResponse(File entity, String thumbnailUrl) {
         if (entity == null) {
             return null;
         }
@@ -29,6 +33,7 @@ public final class FileMapper {
                         : null,
                 entity.getUpdatedBy() != null
                         ? entity.getUploadedBy().getUsername()
-                        : null);
+                        : null,
+                thumbnailUrl);
     }
 }
@@ -0,0 +1,52 @@
+package com.nergal.docseq.helpers.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/*
+ * Opens a PDF from a stream with heap use independent of its size: the bytes
+ * are spooled to a temp file and PDFBox caches decoded streams on disk too.
+ */
+public final class SpooledPdf {
+
+    private SpooledPdf() {
+    }
+
+    public interface Reader<T> {
+        T read(PDDocument document) throws IOException;
+    }
+
+    // The bytes arrived but are not a PDF the reader can use; reading again will not help
+    public static class UnreadablePdfException extends IOException {
+        public UnreadablePdfException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Failures reading {@code in} surface as plain IOExceptions, so callers can
+     * retry them; failures parsing the bytes as {@link UnreadablePdfException}.
+     */
+    public static <T> T read(InputStream in, Reader<T> reader) throws IOException {
+        Path spooled = Files.createTempFile("spooled-", ".pdf");
+        try {
+            Files.copy(in, spooled, StandardCopyOption.REPLACE_EXISTING);
+
+            try (PDDocument document = Loader.loadPDF(
+                    spooled.toFile(), null, null, null, IOUtils.createTempFileOnlyStreamCache())) {
+                return reader.read(document);
+            } catch (IOException e) {
+                throw new UnreadablePdfException(e);
+            }
+        } finally {
+            Files.deleteIfExists(spooled);
+        }
+    }
+}
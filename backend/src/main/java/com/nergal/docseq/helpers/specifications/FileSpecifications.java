@@ -22,9 +22,7 @@ public class FileSpecifications {
             if (name == null || name.isEmpty()) {
                 predicates.add(cb.equal(root.get("folder").get("folderId"), folderId));
             } else {
-                predicates.add(cb.like(
-                        cb.lower(root.get("name")),
-                        "%" + name.toLowerCase() + "%"));
+                predicates.add(NameSearch.matches(cb, root.get("name"), name));
             }
 
             return cb.and(predicates.toArray(new Predicate[0]));
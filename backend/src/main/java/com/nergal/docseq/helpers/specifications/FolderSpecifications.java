@@ -22,9 +22,7 @@ public class FolderSpecifications {
             if (name == null || name.isEmpty()) {
                 predicates.add(cb.isNull(root.get("parent")));
             } else {
-                predicates.add(cb.like(
-                        cb.lower(root.get("name")),
-                        "%" + name.toLowerCase() + "%"));
+                predicates.add(NameSearch.matches(cb, root.get("name"), name));
             }
 
             return cb.and(predicates.toArray(new Predicate[0]));
@@ -41,9 +39,7 @@ public class FolderSpecifications {
             if (name == null || name.isEmpty()) {
                 predicates.add(cb.equal(root.get("parent").get("folderId"), parentId));
             } else {
-                predicates.add(cb.like(
-                        cb.lower(root.get("name")),
-                        "%" + name.toLowerCase() + "%"));
+                predicates.add(NameSearch.matches(cb, root.get("name"), name));
             }
 
             return cb.and(predicates.toArray(new Predicate[0]));
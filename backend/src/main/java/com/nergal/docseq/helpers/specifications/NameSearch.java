@@ -0,0 +1,37 @@
+package com.nergal.docseq.helpers.specifications;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+
+/*
+ * Case-insensitive name match shaped for the pg_trgm GIN indexes created in
+ * data.sql: the column side is exactly lower(name), and user input is escaped
+ * so % and _ are matched literally. Terms shorter than a trigram still match
+ * anywhere in the name; they yield no trigrams, so Postgres narrows by town
+ * and filters the rows instead of using the name part of the index.
+ */
+public final class NameSearch {
+
+    private static final char ESCAPE = '\\';
+
+    private NameSearch() {
+    }
+
+    public static Predicate matches(CriteriaBuilder cb, Expression<String> name, String term) {
+        String pattern = "%" + escape(term.toLowerCase()) + "%";
+
+        return cb.like(cb.lower(name), pattern, ESCAPE);
+    }
+
+    private static String escape(String term) {
+        StringBuilder escaped = new StringBuilder(term.length() + 4);
+        for (char c : term.toCharArray()) {
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                escaped.append(ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
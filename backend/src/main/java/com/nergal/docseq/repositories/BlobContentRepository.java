@@ -0,0 +1,10 @@
+package com.nergal.docseq.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.nergal.docseq.entities.BlobContent;
+
+@Repository
+public interface BlobContentRepository extends JpaRepository<BlobContent, String> {
+}
@@ -0,0 +1,91 @@
+package com.nergal.docseq.repositories;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nergal.docseq.entities.Blob;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    // Insert or add a reference, returning the new reference count.
+    // Concurrent uploads of the same content wait here for the first one to commit.
+    @Query(value = """
+            INSERT INTO tb_blobs (content_hash, size, ref_count, created_at)
+            VALUES (:contentHash, :size, 1, now())
+            ON CONFLICT (content_hash)
+            DO UPDATE SET ref_count = tb_blobs.ref_count + 1
+            RETURNING ref_count
+            """, nativeQuery = true)
+    long acquire(@Param("contentHash") String contentHash, @Param("size") long size);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update Blob b set b.refCount = b.refCount - :count where b.contentHash = :contentHash")
+    int decrement(@Param("contentHash") String contentHash, @Param("count") long count);
+
+    @Query("select b from Blob b where b.contentHash in :contentHashes and b.refCount <= 0")
+    List<Blob> findUnreferenced(@Param("contentHashes") Collection<String> contentHashes);
+
+    @Modifying
+    @Query("delete from Blob b where b.contentHash in :contentHashes and b.refCount <= 0")
+    int deleteUnreferenced(@Param("contentHashes") Collection<String> contentHashes);
+
+    // Drops every reference held by files under a folder subtree, in one statement
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update Blob b set b.refCount = b.refCount - (
+                select count(f) from File f join f.folder g
+                where f.blob = b and (g.folderId = :rootId or g.path like :pattern))
+            where b.contentHash in (
+                select f.blob.contentHash from File f join f.folder g
+                where g.folderId = :rootId or g.path like :pattern)
+            """)
+    int decrementInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+    @Query("""
+            select distinct b from File f join f.blob b join f.folder g
+            where b.refCount <= 0 and (g.folderId = :rootId or g.path like :pattern)
+            """)
+    List<Blob> findUnreferencedInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+    // Object and thumbnail keys of live blobs among the given ones
+    @Query("""
+            select b.objectKey from Blob b where b.objectKey in :keys
+            union
+            select b.thumbnailKey from Blob b where b.thumbnailKey in :keys
+            """)
+    List<String> findReferencedKeys(@Param("keys") Collection<String> keys);
+
+    @Modifying
+    @Query("update Blob b set b.objectKey = :newKey where b.objectKey = :oldKey")
+    int updateObjectKey(@Param("oldKey") String oldKey, @Param("newKey") String newKey);
+
+    @Query("select b from Blob b where b.thumbnailCheckedAt is null and b.objectKey is not null and b.refCount > 0")
+    List<Blob> findPendingThumbnails(Pageable page);
+
+    @Modifying
+    @Query("""
+            update Blob b set b.thumbnailKey = :thumbnailKey, b.thumbnailCheckedAt = :checkedAt
+            where b.contentHash = :contentHash
+            """)
+    int markThumbnail(
+            @Param("contentHash") String contentHash,
+            @Param("thumbnailKey") String thumbnailKey,
+            @Param("checkedAt") Instant checkedAt);
+
+    @Query("""
+            select b from Blob b
+            where b.objectKey is not null and b.refCount > 0
+            and not exists (select 1 from BlobContent c where c.contentHash = b.contentHash)
+            """)
+    List<Blob> findPendingTextIndex(Pageable page);
+}
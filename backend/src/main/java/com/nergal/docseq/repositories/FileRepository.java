@@ -1,5 +1,7 @@
 package com.nergal.docseq.repositories;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -8,10 +10,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.nergal.docseq.entities.File;
 import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.User;
 
 @Repository
 public interface FileRepository extends JpaRepository<File, UUID>, JpaSpecificationExecutor<File> {
@@ -76,4 +82,155 @@ public interface FileRepository extends JpaRepository<File, UUID>, JpaSpecificat
         List<File> findByFolderIn(List<Folder> folders);
 
         List<File> findByFolderInAndDeletedAtIsNotNull(List<Folder> folders);
+
+        // Point files at an object that moved in storage
+        @Modifying
+        @Query("update File f set f.objectKey = :newKey where f.objectKey = :oldKey")
+        int updateObjectKey(@Param("oldKey") String oldKey, @Param("newKey") String newKey);
+
+        // Object and thumbnail keys still in use among the given ones
+        @Query("""
+                        select f.objectKey from File f where f.objectKey in :keys
+                        union
+                        select f.thumbnailKey from File f where f.thumbnailKey in :keys
+                        """)
+        List<String> findReferencedKeys(@Param("keys") Collection<String> keys);
+
+        // Keyset pages of distinct keys in byte order, matching object storage listings
+        @Query(value = """
+                        SELECT DISTINCT f.object_key COLLATE "C" AS k FROM tb_files f
+                        WHERE f.object_key COLLATE "C" > :after
+                        ORDER BY k
+                        LIMIT :limit
+                        """, nativeQuery = true)
+        List<String> findObjectKeysAfter(@Param("after") String after, @Param("limit") int limit);
+
+        @Query(value = """
+                        SELECT DISTINCT f.thumbnail_key COLLATE "C" AS k FROM tb_files f
+                        WHERE f.thumbnail_key COLLATE "C" > :after
+                        ORDER BY k
+                        LIMIT :limit
+                        """, nativeQuery = true)
+        List<String> findThumbnailKeysAfter(@Param("after") String after, @Param("limit") int limit);
+
+        @Modifying
+        @Query("update File f set f.thumbnailKey = :thumbnailKey where f.blob.contentHash = :contentHash")
+        int updateThumbnailKey(
+                        @Param("contentHash") String contentHash,
+                        @Param("thumbnailKey") String thumbnailKey);
+
+        // Files under a folder subtree (see FolderRepository.softDeleteTree); live folders only
+        @Modifying(flushAutomatically = true)
+        @Query("""
+                        update File f set f.deletedAt = :deletedAt, f.deletedBy = :deletedBy, f.updatedAt = :deletedAt
+                        where f.deletedAt is null and f.folder in (
+                                select g from Folder g
+                                where (g.folderId = :rootId or g.path like :pattern) and g.deletedAt is null)
+                        """)
+        int softDeleteInTree(
+                        @Param("rootId") UUID rootId,
+                        @Param("pattern") String pattern,
+                        @Param("deletedAt") Instant deletedAt,
+                        @Param("deletedBy") User deletedBy);
+
+        // Deleted files in deleted folders of the subtree, run before the folders come back
+        @Modifying(flushAutomatically = true)
+        @Query("""
+                        update File f set f.deletedAt = null, f.deletedBy = null, f.updatedAt = :restoredAt
+                        where f.deletedAt is not null and f.folder in (
+                                select g from Folder g
+                                where (g.folderId = :rootId or g.path like :pattern) and g.deletedAt is not null)
+                        """)
+        int restoreInTree(
+                        @Param("rootId") UUID rootId,
+                        @Param("pattern") String pattern,
+                        @Param("restoredAt") Instant restoredAt);
+
+        @Query("""
+                        select coalesce(sum(f.size), 0) from File f
+                        where f.folder in (select g from Folder g where g.folderId = :rootId or g.path like :pattern)
+                        """)
+        long sumSizeInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+        // Files stored before content addressing own their object
+        @Query("""
+                        select f.objectKey from File f
+                        where f.blob is null
+                        and f.folder in (select g from Folder g where g.folderId = :rootId or g.path like :pattern)
+                        """)
+        List<String> findUnaddressedObjectKeysInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+        @Modifying(flushAutomatically = true)
+        @Query("""
+                        delete from File f
+                        where f.folder in (select g from Folder g where g.folderId = :rootId or g.path like :pattern)
+                        """)
+        int deleteInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+        // Keyset pages of the live files under a subtree, grouped by folder
+        @Query(value = """
+                        SELECT f.file_id AS fileId, f.folder_id AS folderId, f.name AS name, f.object_key AS objectKey
+                        FROM tb_files f
+                        JOIN tb_folders g ON g.folder_id = f.folder_id
+                        WHERE (g.folder_id = :rootId OR g.path LIKE :pattern)
+                          AND g.deleted_at IS NULL
+                          AND f.deleted_at IS NULL
+                          AND (f.folder_id, f.file_id) > (:afterFolder, :afterFile)
+                        ORDER BY f.folder_id, f.file_id
+                        LIMIT :limit
+                        """, nativeQuery = true)
+        List<ArchiveFile> findArchiveFilesAfter(
+                        @Param("rootId") UUID rootId,
+                        @Param("pattern") String pattern,
+                        @Param("afterFolder") UUID afterFolder,
+                        @Param("afterFile") UUID afterFile,
+                        @Param("limit") int limit);
+
+        interface ArchiveFile {
+                UUID getFileId();
+
+                UUID getFolderId();
+
+                String getName();
+
+                String getObjectKey();
+        }
+
+        // Full-text search over extracted content, best matches first
+        @Query(value = """
+                        SELECT f.file_id AS fileId, f.name AS name, f.folder_id AS folderId,
+                               ts_rank(c.content_tsv, query) AS rank,
+                               ts_headline('portuguese', c.content_text, query,
+                                           'StartSel=«, StopSel=», MaxFragments=2, MaxWords=20, MinWords=5') AS snippet
+                        FROM tb_files f
+                        JOIN tb_blob_contents c ON c.content_hash = f.content_hash
+                        CROSS JOIN websearch_to_tsquery('portuguese', :query) query
+                        WHERE f.town_id = :townId
+                          AND f.deleted_at IS NULL
+                          AND c.content_tsv @@ query
+                        ORDER BY rank DESC, f.file_id
+                        """, countQuery = """
+                        SELECT count(*)
+                        FROM tb_files f
+                        JOIN tb_blob_contents c ON c.content_hash = f.content_hash
+                        WHERE f.town_id = :townId
+                          AND f.deleted_at IS NULL
+                          AND c.content_tsv @@ websearch_to_tsquery('portuguese', :query)
+                        """, nativeQuery = true)
+        Page<SearchHit> searchContent(
+                        @Param("townId") UUID townId,
+                        @Param("query") String query,
+                        Pageable page);
+
+        interface SearchHit {
+                UUID getFileId();
+
+                String getName();
+
+                UUID getFolderId();
+
+                Float getRank();
+
+                String getSnippet();
+        }
 }
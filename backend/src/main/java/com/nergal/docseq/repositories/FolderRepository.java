@@ -1,5 +1,8 @@
 package com.nergal.docseq.repositories;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -8,9 +11,13 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.User;
 
 @Repository
 public interface FolderRepository extends
@@ -51,6 +58,10 @@ public interface FolderRepository extends
             String name,
             Folder parent);
 
+    Optional<Folder> findFirstByNameAndParentAndDeletedAtIsNull(
+            String name,
+            Folder parent);
+
     // Search for specific folder
     Optional<Folder> findByFolderIdAndTownTownIdAndDeletedAtIsNull(
             UUID folderId,
@@ -68,4 +79,132 @@ public interface FolderRepository extends
     List<Folder> findByParentFolderId(UUID parentId);
 
     List<Folder> findByTownTownId(UUID townId);
+
+    List<Folder> findByFolderIdIn(Collection<UUID> folderIds);
+
+    // Just what the folder tree needs, without loading entities
+    @Query("""
+            select f.folderId as folderId, p.folderId as parentId, f.name as name, f.favorite as favorite
+            from Folder f left join f.parent p
+            where f.town.townId = :townId and f.deletedAt is null
+            """)
+    List<TreeRow> findTreeRows(@Param("townId") UUID townId);
+
+    interface TreeRow {
+        UUID getFolderId();
+
+        UUID getParentId();
+
+        String getName();
+
+        Boolean getFavorite();
+    }
+
+    // Keyset pages of the live folders under a subtree; shorter paths first, so parents come before children
+    @Query(value = """
+            SELECT g.folder_id AS folderId, g.parent_id AS parentId, g.name AS name, g.path AS path
+            FROM tb_folders g
+            WHERE g.path LIKE :pattern
+              AND g.deleted_at IS NULL
+              AND (char_length(g.path), g.path, g.folder_id) > (:afterLength, :afterPath, :afterFolder)
+            ORDER BY char_length(g.path), g.path, g.folder_id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ArchiveFolder> findArchiveFoldersAfter(
+            @Param("pattern") String pattern,
+            @Param("afterLength") int afterLength,
+            @Param("afterPath") String afterPath,
+            @Param("afterFolder") UUID afterFolder,
+            @Param("limit") int limit);
+
+    interface ArchiveFolder {
+        UUID getFolderId();
+
+        UUID getParentId();
+
+        String getName();
+
+        String getPath();
+    }
+
+    // Breadcrumb of a folder, root first, read in one query from its path
+    default List<Folder> findAncestors(Folder folder) {
+        List<UUID> ancestorIds = folder.getAncestorIds();
+        if (ancestorIds.isEmpty()) {
+            return List.of();
+        }
+        return findByFolderIdIn(ancestorIds).stream()
+                .sorted(Comparator.comparingInt(f -> ancestorIds.indexOf(f.getFolderId())))
+                .toList();
+    }
+
+    // Every descendant of a folder, served by the path prefix index
+    @Query("select f from Folder f where f.path like :pattern")
+    List<Folder> findByPathLike(@Param("pattern") String pattern);
+
+    default List<Folder> findDescendants(Folder root) {
+        return findByPathLike(root.getSubtreePath() + "%");
+    }
+
+    // Re-roots the paths of a moved subtree
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update Folder f set f.path = concat(:newPrefix, substring(f.path, :keep))
+            where f.path like :pattern
+            """)
+    int updatePathPrefix(
+            @Param("pattern") String pattern,
+            @Param("newPrefix") String newPrefix,
+            @Param("keep") int keep);
+
+    default int movePaths(String oldPrefix, String newPrefix) {
+        return updatePathPrefix(oldPrefix + "%", newPrefix, oldPrefix.length() + 1);
+    }
+
+    /*
+     * Whole-subtree statements: a folder and everything under it, matched by
+     * id or path prefix. Entities already loaded are not refreshed.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update Folder f set f.deletedAt = :deletedAt, f.deletedBy = :deletedBy, f.updatedAt = :deletedAt
+            where (f.folderId = :rootId or f.path like :pattern) and f.deletedAt is null
+            """)
+    int softDeleteTree(
+            @Param("rootId") UUID rootId,
+            @Param("pattern") String pattern,
+            @Param("deletedAt") Instant deletedAt,
+            @Param("deletedBy") User deletedBy);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update Folder f set f.deletedAt = null, f.deletedBy = null, f.updatedAt = :restoredAt
+            where (f.folderId = :rootId or f.path like :pattern) and f.deletedAt is not null
+            """)
+    int restoreTree(
+            @Param("rootId") UUID rootId,
+            @Param("pattern") String pattern,
+            @Param("restoredAt") Instant restoredAt);
+
+    // Unlinks the rows first so the delete never trips the parent foreign key
+    @Modifying(flushAutomatically = true)
+    @Query("update Folder f set f.parent = null where f.folderId = :rootId or f.path like :pattern")
+    int detachTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+    @Modifying
+    @Query("delete from Folder f where f.folderId = :rootId or f.path like :pattern")
+    int deleteTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+    default int softDeleteSubtree(Folder root, Instant deletedAt, User deletedBy) {
+        return softDeleteTree(root.getFolderId(), root.getSubtreePath() + "%", deletedAt, deletedBy);
+    }
+
+    default int restoreSubtree(Folder root, Instant restoredAt) {
+        return restoreTree(root.getFolderId(), root.getSubtreePath() + "%", restoredAt);
+    }
+
+    default int deleteSubtree(Folder root) {
+        detachTree(root.getFolderId(), root.getSubtreePath() + "%");
+        return deleteTree(root.getFolderId(), root.getSubtreePath() + "%");
+    }
 }
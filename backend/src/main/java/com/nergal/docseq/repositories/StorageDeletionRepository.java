@@ -0,0 +1,36 @@
+package com.nergal.docseq.repositories;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nergal.docseq.entities.StorageDeletion;
+
+@Repository
+public interface StorageDeletionRepository extends JpaRepository<StorageDeletion, UUID> {
+
+    // Rows locked by another worker are skipped, so several instances can drain in parallel
+    @Query(value = """
+            SELECT * FROM tb_storage_deletions
+            WHERE next_attempt_at <= :now
+            ORDER BY next_attempt_at
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<StorageDeletion> claim(@Param("now") Instant now, @Param("limit") int limit);
+
+    // The content is being stored again, so its pending deletion must not run
+    @Modifying
+    @Query("delete from StorageDeletion d where d.contentHash = :contentHash")
+    int cancel(@Param("contentHash") String contentHash);
+
+    @Query("select distinct d.objectKey from StorageDeletion d where d.objectKey in :objectKeys")
+    List<String> findPendingObjectKeys(@Param("objectKeys") Collection<String> objectKeys);
+}
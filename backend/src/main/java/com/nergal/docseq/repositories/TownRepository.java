@@ -4,6 +4,9 @@ import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.nergal.docseq.entities.Town;
@@ -15,4 +18,23 @@ public interface TownRepository extends JpaRepository<Town, UUID> {
 
     Optional<Town> findByTownId(UUID townId);
 
+    // Serializes folder tree changes within a town until the transaction ends.
+    // NO KEY UPDATE still lets rows that reference the town be inserted meanwhile.
+    @Query(value = "SELECT town_id FROM tb_town WHERE town_id = :townId FOR NO KEY UPDATE", nativeQuery = true)
+    Optional<UUID> lockFolderTree(@Param("townId") UUID townId);
+
+    // One per FolderTreeChangedEvent, so FolderTreeCache can tell when a snapshot missed a change.
+    // The update takes the same lock as lockFolderTree, so versions follow commit order.
+    default long nextTreeVersion(UUID townId) {
+        incrementTreeVersion(townId);
+        return findTreeVersion(townId);
+    }
+
+    @Modifying
+    @Query(value = "UPDATE tb_town SET tree_version = tree_version + 1 WHERE town_id = :townId", nativeQuery = true)
+    int incrementTreeVersion(@Param("townId") UUID townId);
+
+    @Query(value = "SELECT tree_version FROM tb_town WHERE town_id = :townId", nativeQuery = true)
+    Long findTreeVersion(@Param("townId") UUID townId);
+
 }
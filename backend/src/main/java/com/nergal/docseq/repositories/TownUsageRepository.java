@@ -0,0 +1,100 @@
+package com.nergal.docseq.repositories;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nergal.docseq.entities.TownUsage;
+
+@Repository
+public interface TownUsageRepository extends JpaRepository<TownUsage, UUID> {
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO tb_town_usage (town_id, used_bytes, reserved_bytes, updated_at)
+            VALUES (:townId, 0, 0, now())
+            ON CONFLICT (town_id) DO NOTHING
+            """, nativeQuery = true)
+    int createIfMissing(@Param("townId") UUID townId);
+
+    // Adds bytes, counted as reserved until settled, only if the total stays within the quota;
+    // returns 0 when it would not. The row stays locked until the surrounding transaction ends.
+    @Modifying
+    @Query(value = """
+            UPDATE tb_town_usage
+            SET used_bytes = used_bytes + :bytes, reserved_bytes = reserved_bytes + :bytes, updated_at = now()
+            WHERE town_id = :townId
+              AND used_bytes + :bytes <= COALESCE(quota_bytes, :defaultQuota)
+            """, nativeQuery = true)
+    int reserve(@Param("townId") UUID townId, @Param("bytes") long bytes, @Param("defaultQuota") long defaultQuota);
+
+    @Modifying
+    @Query(value = """
+            UPDATE tb_town_usage
+            SET used_bytes = GREATEST(used_bytes - :bytes, 0), updated_at = now()
+            WHERE town_id = :townId
+            """, nativeQuery = true)
+    int release(@Param("townId") UUID townId, @Param("bytes") long bytes);
+
+    // Reserved bytes whose File rows commit in the same transaction
+    @Modifying
+    @Query(value = """
+            UPDATE tb_town_usage
+            SET reserved_bytes = GREATEST(reserved_bytes - :bytes, 0), updated_at = now()
+            WHERE town_id = :townId
+            """, nativeQuery = true)
+    int settle(@Param("townId") UUID townId, @Param("bytes") long bytes);
+
+    // Reserved bytes that will never get a File row
+    @Modifying
+    @Query(value = """
+            UPDATE tb_town_usage
+            SET used_bytes = GREATEST(used_bytes - :bytes, 0),
+                reserved_bytes = GREATEST(reserved_bytes - :bytes, 0),
+                updated_at = now()
+            WHERE town_id = :townId
+            """, nativeQuery = true)
+    int cancel(@Param("townId") UUID townId, @Param("bytes") long bytes);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO tb_town_usage (town_id, used_bytes, reserved_bytes, updated_at)
+            SELECT t.town_id, 0, 0, now() FROM tb_town t
+            ON CONFLICT (town_id) DO NOTHING
+            """, nativeQuery = true)
+    int createMissing();
+
+    @Query("select u.townId from TownUsage u where u.townId > :after order by u.townId")
+    List<UUID> findTownIdsAfter(@Param("after") UUID after, Pageable page);
+
+    // Taken before reconcile, so its sum sees every settled upload and none can settle meanwhile
+    @Query(value = """
+            SELECT town_id FROM tb_town_usage
+            WHERE town_id IN (:townIds)
+            ORDER BY town_id
+            FOR UPDATE
+            """, nativeQuery = true)
+    List<UUID> lockAll(@Param("townIds") Collection<UUID> townIds);
+
+    // Recomputes from tb_files plus what is reserved but not in tb_files yet; counts trashed
+    // files too, since their bytes are still stored. Reservations of towns with no activity
+    // since the cutoff were left behind by a crash and are dropped.
+    @Modifying
+    @Query(value = """
+            UPDATE tb_town_usage u
+            SET reserved_bytes = CASE WHEN u.updated_at < :idleSince THEN 0 ELSE u.reserved_bytes END,
+                used_bytes = COALESCE((SELECT SUM(f.size) FROM tb_files f WHERE f.town_id = u.town_id), 0)
+                        + CASE WHEN u.updated_at < :idleSince THEN 0 ELSE u.reserved_bytes END,
+                reconciled_at = now()
+            WHERE u.town_id IN (:townIds)
+            """, nativeQuery = true)
+    int reconcile(@Param("townIds") Collection<UUID> townIds, @Param("idleSince") Instant idleSince);
+}
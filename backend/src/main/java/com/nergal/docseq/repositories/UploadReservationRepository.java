@@ -0,0 +1,41 @@
+package com.nergal.docseq.repositories;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nergal.docseq.entities.UploadReservation;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface UploadReservationRepository extends JpaRepository<UploadReservation, UUID> {
+
+    Optional<UploadReservation> findByReservationIdAndTownTownId(UUID reservationId, UUID townId);
+
+    // A second commit of the same reservation waits here and then finds it gone
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<UploadReservation> findLockedByReservationIdAndTownTownId(UUID reservationId, UUID townId);
+
+    List<UploadReservation> findByExpiresAtBefore(Instant now, Pageable page);
+
+    // Reservations targeting a folder subtree (see FolderRepository.deleteTree)
+    @Query("""
+            select r.stagingKey from UploadReservation r
+            where r.stagingKey is not null and r.folder in (select g from Folder g where g.folderId = :rootId or g.path like :pattern)
+            """)
+    List<String> findStagingKeysInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from UploadReservation r where r.folder in (select g from Folder g where g.folderId = :rootId or g.path like :pattern)")
+    int deleteInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+}
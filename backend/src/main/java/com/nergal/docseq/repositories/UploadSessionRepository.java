@@ -0,0 +1,34 @@
+package com.nergal.docseq.repositories;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.nergal.docseq.entities.UploadSession;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+
+    Optional<UploadSession> findBySessionIdAndTownTownId(UUID sessionId, UUID townId);
+
+    List<UploadSession> findByExpiresAtBefore(Instant now, Pageable page);
+
+    // Sessions targeting a folder subtree (see FolderRepository.deleteTree)
+    @Query("""
+            select s.sessionId from UploadSession s
+            where s.folder in (select g from Folder g where g.folderId = :rootId or g.path like :pattern)
+            """)
+    List<UUID> findSessionIdsInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from UploadSession s where s.folder in (select g from Folder g where g.folderId = :rootId or g.path like :pattern)")
+    int deleteInTree(@Param("rootId") UUID rootId, @Param("pattern") String pattern);
+}
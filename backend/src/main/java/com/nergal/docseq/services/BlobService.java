@@ -0,0 +1,163 @@
+package com.nergal.docseq.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.nergal.docseq.entities.Blob;
+import com.nergal.docseq.entities.File;
+import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.StorageDeletion;
+import com.nergal.docseq.events.BlobStoredEvent;
+import com.nergal.docseq.helpers.ContentHashes;
+import com.nergal.docseq.repositories.BlobRepository;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+
+@Service
+public class BlobService {
+
+    private static final int IN_CLAUSE_CHUNK = 1000;
+
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final StorageDeletionRepository storageDeletionRepository;
+    private final StorageService storageService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public BlobService(
+            BlobRepository blobRepository,
+            FileRepository fileRepository,
+            StorageDeletionRepository storageDeletionRepository,
+            StorageService storageService,
+            ApplicationEventPublisher eventPublisher) {
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.storageDeletionRepository = storageDeletionRepository;
+        this.storageService = storageService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    // Stores the content once per hash; later uploads of the same bytes only add a reference
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Blob store(MultipartFile file) {
+        String contentHash = ContentHashes.sha256(file);
+
+        return store(contentHash, file.getSize(), () -> storageService.upload(file, contentHash));
+    }
+
+    /**
+     * Same as {@link #store(MultipartFile)} for content already uploaded to a
+     * staging key whose hash was verified by the caller. The staged copy is
+     * queued for deletion either way.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Blob storeStaged(String contentHash, long size, String stagingKey) {
+        Blob blob = store(contentHash, size, () -> storageService.promote(stagingKey, contentHash));
+
+        storageDeletionRepository.save(new StorageDeletion(stagingKey, null));
+        return blob;
+    }
+
+    private Blob store(String contentHash, long size, Supplier<String> write) {
+        long references = blobRepository.acquire(contentHash, size);
+
+        Blob blob = blobRepository.findById(contentHash)
+                .orElseThrow(() -> new IllegalStateException("Blob not found after acquire"));
+
+        if (references == 1) {
+            // waits for a worker that is deleting the previous copy, then writes a fresh one
+            storageDeletionRepository.cancel(contentHash);
+            blob.setObjectKey(write.get());
+            eventPublisher.publishEvent(new BlobStoredEvent(contentHash, blob.getObjectKey()));
+        }
+
+        return blob;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(File file) {
+        releaseAll(List.of(file));
+    }
+
+    /**
+     * Drops the files' references to their content. Objects left without any
+     * reference are queued for deletion in the same transaction.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseAll(Collection<File> files) {
+        Map<String, Long> referencesByHash = new LinkedHashMap<>();
+        List<StorageDeletion> deletions = new ArrayList<>();
+
+        for (File file : files) {
+            Blob blob = file.getBlob();
+
+            // files uploaded before content addressing own their object
+            if (blob == null) {
+                deletions.add(new StorageDeletion(file.getObjectKey(), null));
+                continue;
+            }
+            referencesByHash.merge(blob.getContentHash(), 1L, Long::sum);
+        }
+
+        referencesByHash.forEach(blobRepository::decrement);
+
+        List<String> contentHashes = new ArrayList<>(referencesByHash.keySet());
+        for (int i = 0; i < contentHashes.size(); i += IN_CLAUSE_CHUNK) {
+            List<String> chunk = contentHashes.subList(i, Math.min(i + IN_CLAUSE_CHUNK, contentHashes.size()));
+
+            queueDeletions(blobRepository.findUnreferenced(chunk), deletions);
+            blobRepository.deleteUnreferenced(chunk);
+        }
+
+        storageDeletionRepository.saveAll(deletions);
+    }
+
+    /**
+     * Deletes every file under a folder and releases their references as
+     * {@link #releaseAll} does, without loading the files.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteFilesInTree(Folder root) {
+        UUID rootId = root.getFolderId();
+        String pattern = root.getSubtreePath() + "%";
+        List<StorageDeletion> deletions = new ArrayList<>();
+
+        for (String objectKey : fileRepository.findUnaddressedObjectKeysInTree(rootId, pattern)) {
+            deletions.add(new StorageDeletion(objectKey, null));
+        }
+
+        blobRepository.decrementInTree(rootId, pattern);
+        List<Blob> unreferenced = blobRepository.findUnreferencedInTree(rootId, pattern);
+        queueDeletions(unreferenced, deletions);
+
+        fileRepository.deleteInTree(rootId, pattern);
+
+        List<String> contentHashes = unreferenced.stream().map(Blob::getContentHash).toList();
+        for (int i = 0; i < contentHashes.size(); i += IN_CLAUSE_CHUNK) {
+            blobRepository.deleteUnreferenced(
+                    contentHashes.subList(i, Math.min(i + IN_CLAUSE_CHUNK, contentHashes.size())));
+        }
+
+        storageDeletionRepository.saveAll(deletions);
+    }
+
+    private static void queueDeletions(Collection<Blob> unreferenced, List<StorageDeletion> deletions) {
+        for (Blob blob : unreferenced) {
+            deletions.add(new StorageDeletion(blob.getObjectKey(), blob.getContentHash()));
+            if (blob.getThumbnailKey() != null) {
+                deletions.add(new StorageDeletion(blob.getThumbnailKey(), blob.getContentHash()));
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.nergal.docseq.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.nergal.docseq.dto.files.FileDownloadDTO;
+import com.nergal.docseq.dto.storage.PresignedUploadDTO;
+import com.nergal.docseq.dto.storage.StoredObjectDTO;
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+import com.nergal.docseq.exception.NotFoundException;
+import com.nergal.docseq.helpers.ContentHashes;
+import com.nergal.docseq.helpers.http.FileRangeResponder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Read-through disk cache in front of a remote StorageService. A miss is
+ * answered by the delegate as before while a background copy fills the cache;
+ * later reads are served from local disk. Eviction is least recently used,
+ * bounded by total bytes, and skips entries a request is still serving.
+ */
+@Slf4j
+public class CachingStorageService implements StorageService {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final StorageService delegate;
+    private final Path directory;
+    private final long maxBytes;
+    private final ExecutorService fillExecutor;
+
+    // cache file name -> size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+    private long totalBytes;
+
+    // cache file name -> requests serving it, and pinned files dropped meanwhile; guarded by entries
+    private final Map<String, Integer> pins = new HashMap<>();
+    private final Set<String> removeWhenUnpinned = new HashSet<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bytesSaved;
+
+    public CachingStorageService(
+            StorageService delegate,
+            Path directory,
+            DataSize maxSize,
+            int fillConcurrency,
+            MeterRegistry registry) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.maxBytes = maxSize.toBytes();
+        this.fillExecutor = new ThreadPoolExecutor(
+                fillConcurrency,
+                fillConcurrency,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(256),
+                Thread.ofVirtual().name("storage-cache-fill-", 0).factory());
+
+        this.hits = Counter.builder("storage.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("storage.cache.requests").tag("result", "miss").register(registry);
+        this.bytesSaved = Counter.builder("storage.cache.bytes.saved")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("storage.cache.size", this, CachingStorageService::cachedBytes)
+                .baseUnit("bytes")
+                .register(registry);
+
+        loadExisting();
+    }
+
+    public void shutdown() {
+        fillExecutor.shutdownNow();
+    }
+
+    @Override
+    public void serve(FileDownloadDTO file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String pinned = pin(file.objectKey());
+
+        if (pinned != null) {
+            try {
+                // no sendfile: Tomcat would open the file after the pin is released
+                long sent = FileRangeResponder.write(
+                        directory.resolve(pinned),
+                        file.contentType(),
+                        file.name(),
+                        FileRangeResponder.eTagFor(file.objectKey()),
+                        request,
+                        response,
+                        false);
+                hits.increment();
+                bytesSaved.increment(sent);
+                return;
+            } catch (NotFoundException | NoSuchFileException e) {
+                // removed behind the index's back; nothing was sent yet, so the delegate can answer
+                if (response.isCommitted()) {
+                    throw e;
+                }
+                response.reset();
+                evict(file.objectKey());
+            } finally {
+                unpin(pinned);
+            }
+        }
+
+        misses.increment();
+        scheduleFill(file.objectKey(), file.size());
+        delegate.serve(file, request, response);
+    }
+
+    @Override
+    public InputStream open(String storageKey) {
+        Path cached = lookup(storageKey);
+        if (cached != null) {
+            try {
+                InputStream in = Files.newInputStream(cached);
+                hits.increment();
+                return in;
+            } catch (IOException e) {
+                // evicted in between; read from the delegate
+            }
+        }
+        misses.increment();
+        return delegate.open(storageKey);
+    }
+
+    @Override
+    public String upload(MultipartFile file, String name) {
+        return delegate.upload(file, name);
+    }
+
+    @Override
+    public void put(String storageKey, byte[] content, String contentType) {
+        delegate.put(storageKey, content, contentType);
+        evict(storageKey);
+    }
+
+    @Override
+    public void delete(String storageKey) {
+        delegate.delete(storageKey);
+        evict(storageKey);
+    }
+
+    @Override
+    public Set<String> deleteAll(Collection<String> storageKeys) {
+        Set<String> failed = delegate.deleteAll(storageKeys);
+        storageKeys.stream()
+                .filter(key -> !failed.contains(key))
+                .forEach(this::evict);
+        return failed;
+    }
+
+    @Override
+    public String generateTemporaryUrl(String storageKey) {
+        return delegate.generateTemporaryUrl(storageKey);
+    }
+
+    @Override
+    public PresignedUploadDTO presignUpload(String storageKey, long size, String contentType, String contentHash) {
+        return delegate.presignUpload(storageKey, size, contentType, contentHash);
+    }
+
+    @Override
+    public Optional<StoredObjectDTO> head(String storageKey) {
+        return delegate.head(storageKey);
+    }
+
+    @Override
+    public List<StoredObjectSummaryDTO> list(String startAfter, int limit) {
+        return delegate.list(startAfter, limit);
+    }
+
+    @Override
+    public String promote(String stagingKey, String name) {
+        return delegate.promote(stagingKey, name);
+    }
+
+    /* ========================= */
+    /* Cache bookkeeping */
+    /* ========================= */
+
+    private Path lookup(String storageKey) {
+        String name = cacheName(storageKey);
+        synchronized (entries) {
+            return entries.get(name) == null ? null : directory.resolve(name);
+        }
+    }
+
+    // Returns the cache file name, kept on disk until unpinned, or null on a miss
+    private String pin(String storageKey) {
+        String name = cacheName(storageKey);
+        synchronized (entries) {
+            if (entries.get(name) == null) {
+                return null;
+            }
+            pins.merge(name, 1, Integer::sum);
+            return name;
+        }
+    }
+
+    private void unpin(String name) {
+        boolean remove;
+        synchronized (entries) {
+            remove = pins.compute(name, (key, count) -> count == 1 ? null : count - 1) == null
+                    && removeWhenUnpinned.remove(name);
+        }
+        if (remove) {
+            deleteQuietly(name);
+        }
+    }
+
+    private void scheduleFill(String storageKey, Long size) {
+        // a single object may not push out most of the cache
+        if (size != null && size > maxBytes / 4) {
+            return;
+        }
+        if (!filling.add(storageKey)) {
+            return;
+        }
+        try {
+            fillExecutor.execute(() -> {
+                try {
+                    fill(storageKey);
+                } catch (Exception e) {
+                    log.warn("Failed to cache {}: {}", storageKey, e.getMessage());
+                } finally {
+                    filling.remove(storageKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            filling.remove(storageKey);
+        }
+    }
+
+    private void fill(String storageKey) throws IOException {
+        String name = cacheName(storageKey);
+        Path temp = Files.createTempFile(directory, "fill-", TEMP_SUFFIX);
+        try {
+            try (InputStream in = delegate.open(storageKey)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            admit(name, Files.size(directory.resolve(name)));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void admit(String name, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Long previous = entries.put(name, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            removeWhenUnpinned.remove(name);
+
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(name) || pins.containsKey(entry.getKey())) {
+                    continue;
+                }
+                totalBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        evicted.forEach(this::deleteQuietly);
+    }
+
+    private void evict(String storageKey) {
+        String name = cacheName(storageKey);
+        synchronized (entries) {
+            Long size = entries.remove(name);
+            if (size == null) {
+                return;
+            }
+            totalBytes -= size;
+            if (pins.containsKey(name)) {
+                removeWhenUnpinned.add(name);
+                return;
+            }
+        }
+        deleteQuietly(name);
+    }
+
+    // Rebuilds the index after a restart, oldest files first so they are evicted first
+    private void loadExisting() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.sorted(Comparator.comparing(this::lastModified))
+                        .forEach(path -> {
+                            String name = path.getFileName().toString();
+                            if (name.endsWith(TEMP_SUFFIX)) {
+                                deleteQuietly(name);
+                                return;
+                            }
+                            try {
+                                admit(name, Files.size(path));
+                            } catch (IOException e) {
+                                deleteQuietly(name);
+                            }
+                        });
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error initializing storage cache at " + directory, e);
+        }
+    }
+
+    private long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void deleteQuietly(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            log.warn("Failed to remove cached file {}: {}", name, e.getMessage());
+        }
+    }
+
+    private double cachedBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    // keys may contain slashes; the hash keeps every entry flat in one directory
+    private String cacheName(String storageKey) {
+        return ContentHashes.sha256(storageKey);
+    }
+}
@@ -1,47 +1,96 @@
 package com.nergal.docseq.services;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.nergal.docseq.dto.PageResponse;
+import com.nergal.docseq.dto.files.DirectUploadRequestDTO;
+import com.nergal.docseq.dto.files.DirectUploadResponseDTO;
+import com.nergal.docseq.dto.files.FileDownloadDTO;
 import com.nergal.docseq.dto.files.FileResponseDTO;
+import com.nergal.docseq.dto.files.FileSearchResultDTO;
 import com.nergal.docseq.dto.folders.FolderUpdateDTO;
+import com.nergal.docseq.dto.storage.PresignedUploadDTO;
+import com.nergal.docseq.dto.storage.StoredObjectDTO;
+import com.nergal.docseq.entities.Blob;
 import com.nergal.docseq.entities.File;
 import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.UploadReservation;
 import com.nergal.docseq.entities.User;
+import com.nergal.docseq.events.FolderTreeChangedEvent;
 import com.nergal.docseq.exception.BadRequestException;
 import com.nergal.docseq.exception.NotFoundException;
+import com.nergal.docseq.exception.UnprocessableContentException;
 import com.nergal.docseq.helpers.mappers.FileMapper;
+import com.nergal.docseq.helpers.mappers.PageMapper;
 import com.nergal.docseq.repositories.FileRepository;
 import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.TownRepository;
+import com.nergal.docseq.repositories.UploadReservationRepository;
 import com.nergal.docseq.repositories.UserRepository;
 
 @Service
 public class FileService {
 
+    // repeat views within this window do not rewrite lastSeen
+    private static final Duration LAST_SEEN_RESOLUTION = Duration.ofMinutes(1);
+
+    // time left to commit once the upload URL has expired
+    private static final Duration COMMIT_GRACE = Duration.ofHours(1);
+
     private final FileRepository fileRepository;
     private final FolderRepository folderRepository;
     private final UserRepository userRepository;
+    private final TownRepository townRepository;
     private final StorageService storageService;
+    private final BlobService blobService;
+    private final UploadReservationRepository uploadReservationRepository;
+    private final StorageQuotaService storageQuotaService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${storage.direct-upload.max-size:200MB}")
+    private DataSize directUploadMaxSize;
 
     public FileService(
             FileRepository fileRepository,
             FolderRepository folderRepository,
             UserRepository userRepository,
-            StorageService storageService) {
+            TownRepository townRepository,
+            StorageService storageService,
+            BlobService blobService,
+            UploadReservationRepository uploadReservationRepository,
+            StorageQuotaService storageQuotaService,
+            TransactionTemplate transactionTemplate,
+            ApplicationEventPublisher eventPublisher) {
         this.fileRepository = fileRepository;
         this.folderRepository = folderRepository;
         this.userRepository = userRepository;
+        this.townRepository = townRepository;
         this.storageService = storageService;
+        this.blobService = blobService;
+        this.uploadReservationRepository = uploadReservationRepository;
+        this.storageQuotaService = storageQuotaService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
     }
 
-    @Transactional
+    // Quota is reserved before the transaction starts, which it then runs (see StorageQuotaService)
     public FileResponseDTO upload(
             MultipartFile file,
             UUID folderId,
@@ -49,6 +98,19 @@ public class FileService {
 
         validatePdf(file);
 
+        return storageQuotaService.withReservation(getTownId(token), file.getSize(),
+                () -> createUpload(file, folderId, token));
+    }
+
+    // The transactional part of upload, for callers that reserved the quota themselves
+    @Transactional(propagation = Propagation.MANDATORY)
+    public FileResponseDTO createUpload(
+            MultipartFile file,
+            UUID folderId,
+            JwtAuthenticationToken token) {
+
+        validatePdf(file);
+
         User user = getUser(token);
 
         Folder folder = folderRepository
@@ -57,20 +119,124 @@ public class FileService {
                         user.getTown().getTownId())
                 .orElseThrow(() -> new NotFoundException("Folder not found"));
 
-        File entity = new File();
-        entity.setName(file.getOriginalFilename());
-        entity.setSize(file.getSize());
-        entity.setObjectKey(file.getOriginalFilename());
-        entity.setTown(user.getTown());
-        entity.setContentType(file.getContentType());
-        entity.setFolder(folder);
-        entity.setUploadedBy(user);
+        // upload físico (skipped when the same content is already stored)
+        Blob blob = blobService.store(file);
 
-        fileRepository.save(entity);
+        File entity = createFile(file.getOriginalFilename(), file.getSize(), file.getContentType(), blob, folder, user);
+
+        return FileMapper.toResponse(entity);
+    }
+
+    // First step of a browser-to-storage upload: the bytes never pass through this server
+    @Transactional
+    public DirectUploadResponseDTO reserveUpload(DirectUploadRequestDTO dto, JwtAuthenticationToken token) {
+
+        if (!"application/pdf".equalsIgnoreCase(dto.contentType())) {
+            throw new BadRequestException("Only PDF allowed");
+        }
+
+        if (dto.size() > directUploadMaxSize.toBytes()) {
+            throw new BadRequestException("File is too large");
+        }
+
+        User user = getUser(token);
+
+        Folder folder = folderRepository
+                .findByFolderIdAndTownTownIdAndDeletedAtIsNull(
+                        dto.folderId(),
+                        user.getTown().getTownId())
+                .orElseThrow(() -> new NotFoundException("Folder not found"));
+
+        storageQuotaService.check(user.getTown().getTownId(), dto.size());
+
+        UploadReservation reservation = new UploadReservation();
+        reservation.setName(dto.name());
+        reservation.setSize(dto.size());
+        reservation.setContentType(dto.contentType());
+        reservation.setContentHash(dto.sha256().toLowerCase());
+        reservation.setFolder(folder);
+        reservation.setTown(user.getTown());
+        reservation.setUploadedBy(user);
+        reservation.setExpiresAt(Instant.now());
+        uploadReservationRepository.save(reservation);
+
+        reservation.setStagingKey("staging/" + reservation.getReservationId() + ".pdf");
+
+        PresignedUploadDTO presigned = storageService.presignUpload(
+                reservation.getStagingKey(),
+                reservation.getSize(),
+                reservation.getContentType(),
+                reservation.getContentHash());
+
+        reservation.setExpiresAt(presigned.expiresAt().plus(COMMIT_GRACE));
+
+        return new DirectUploadResponseDTO(
+                reservation.getReservationId(),
+                presigned.url(),
+                presigned.headers(),
+                presigned.expiresAt());
+    }
+
+    // Second step: checks what actually landed in storage before the file becomes visible
+    public FileResponseDTO commitUpload(UUID reservationId, JwtAuthenticationToken token) {
+        UUID townId = getTownId(token);
+
+        // the size never changes, so quota can be reserved before the reservation is locked
+        long size = transactionTemplate.execute(status -> uploadReservationRepository
+                .findByReservationIdAndTownTownId(reservationId, townId)
+                .orElseThrow(() -> new NotFoundException("Upload reservation not found"))
+                .getSize());
+
+        return storageQuotaService.withReservation(townId, size,
+                () -> commitReserved(reservationId, token));
+    }
+
+    private FileResponseDTO commitReserved(UUID reservationId, JwtAuthenticationToken token) {
+        User user = getUser(token);
 
-        // upload físico
-        String storageKey = storageService.upload(file, entity.getFileId());
-        entity.setObjectKey(storageKey);
+        UploadReservation reservation = uploadReservationRepository
+                .findLockedByReservationIdAndTownTownId(reservationId, user.getTown().getTownId())
+                .orElseThrow(() -> new NotFoundException("Upload reservation not found"));
+
+        if (reservation.getExpiresAt().isBefore(Instant.now())) {
+            throw new BadRequestException("Upload reservation expired");
+        }
+
+        Folder folder = folderRepository
+                .findByFolderIdAndTownTownIdAndDeletedAtIsNull(
+                        reservation.getFolder().getFolderId(),
+                        user.getTown().getTownId())
+                .orElseThrow(() -> new NotFoundException("Folder not found"));
+
+        StoredObjectDTO stored = storageService.head(reservation.getStagingKey())
+                .orElseThrow(() -> new UnprocessableContentException("Upload not received"));
+
+        if (stored.size() != reservation.getSize()) {
+            throw new UnprocessableContentException("Uploaded size does not match the reservation");
+        }
+
+        if (!"application/pdf".equalsIgnoreCase(stored.contentType())) {
+            throw new UnprocessableContentException("Only PDF allowed");
+        }
+
+        if (!reservation.getContentHash().equals(stored.checksumSha256())) {
+            throw new UnprocessableContentException("Uploaded content does not match its checksum");
+        }
+
+        Blob blob = blobService.storeStaged(
+                reservation.getContentHash(),
+                reservation.getSize(),
+                reservation.getStagingKey());
+
+        File entity = createFile(
+                reservation.getName(),
+                reservation.getSize(),
+                reservation.getContentType(),
+                blob,
+                folder,
+                user);
+
+        uploadReservationRepository.delete(reservation);
 
         return FileMapper.toResponse(entity);
     }
@@ -105,14 +271,13 @@ public class FileService {
 
     private void restoreFolderAncestors(Folder folder, User user) {
         List<Folder> foldersToRestore = new ArrayList<>();
-        Folder current = folder;
 
-        while (current != null) {
-            if (current.getDeletedAt() != null) {
-                foldersToRestore.add(current);
-            }
-            current = current.getParent();
+        if (folder.getDeletedAt() != null) {
+            foldersToRestore.add(folder);
         }
+        folderRepository.findAncestors(folder).stream()
+                .filter(f -> f.getDeletedAt() != null)
+                .forEach(foldersToRestore::add);
 
         if (!foldersToRestore.isEmpty()) {
             foldersToRestore.forEach(f -> {
@@ -120,6 +285,8 @@ public class FileService {
                 f.setDeletedBy(null);
             });
             folderRepository.saveAll(foldersToRestore);
+            UUID townId = user.getTown().getTownId();
+            eventPublisher.publishEvent(FolderTreeChangedEvent.reload(townId, townRepository.nextTreeVersion(townId)));
         }
     }
 
@@ -138,8 +305,9 @@ public class FileService {
             throw new BadRequestException("File must be in trash");
         }
 
-        storageService.delete(file.getObjectKey());
         fileRepository.delete(file);
+        blobService.release(file);
+        storageQuotaService.release(user.getTown().getTownId(), file.getSize());
     }
 
     @Transactional
@@ -177,10 +345,50 @@ public class FileService {
         User user = getUser(token);
 
         File file = getFileBelongsOrganization(fileId, user.getTown().getTownId());
-        file.setLastSeen(Instant.now());
+        Instant now = Instant.now();
+        if (file.getLastSeen() == null || file.getLastSeen().isBefore(now.minus(LAST_SEEN_RESOLUTION))) {
+            file.setLastSeen(now);
+        }
         return storageService.generateTemporaryUrl(file.getObjectKey());
     }
 
+    @Transactional(readOnly = true)
+    public FileDownloadDTO getDownload(UUID fileId, JwtAuthenticationToken token) {
+        User user = getUser(token);
+
+        File file = getFileBelongsOrganization(fileId, user.getTown().getTownId());
+        return new FileDownloadDTO(
+                file.getFileId(),
+                file.getName(),
+                file.getContentType(),
+                file.getSize(),
+                file.getObjectKey());
+    }
+
+    // Searches inside document text; ranking is fixed, so any requested sort is ignored
+    @Transactional(readOnly = true)
+    public PageResponse<FileSearchResultDTO> search(String query, Pageable pageable, JwtAuthenticationToken token) {
+        if (query == null || query.isBlank()) {
+            throw new BadRequestException("Search query is required");
+        }
+
+        User user = getUser(token);
+
+        var hits = fileRepository
+                .searchContent(
+                        user.getTown().getTownId(),
+                        query.trim(),
+                        PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()))
+                .map(hit -> new FileSearchResultDTO(
+                        hit.getFileId(),
+                        hit.getName(),
+                        hit.getFolderId(),
+                        hit.getSnippet(),
+                        hit.getRank()));
+
+        return PageMapper.toPageResponse(hits);
+    }
+
     /* ========================= */
     /* Helpers */
     /* ========================= */
@@ -196,6 +404,26 @@ public class FileService {
         }
     }
 
+    private File createFile(String name, long size, String contentType, Blob blob, Folder folder, User user) {
+        return fileRepository.save(newFile(name, size, contentType, blob, folder, user));
+    }
+
+    // Unsaved File for blob; bulk callers persist these in batches
+    File newFile(String name, long size, String contentType, Blob blob, Folder folder, User user) {
+        File entity = new File();
+        entity.setName(name);
+        entity.setSize(size);
+        entity.setObjectKey(blob.getObjectKey());
+        entity.setBlob(blob);
+        entity.setThumbnailKey(blob.getThumbnailKey());
+        entity.setTown(user.getTown());
+        entity.setContentType(contentType);
+        entity.setFolder(folder);
+        entity.setUploadedBy(user);
+
+        return entity;
+    }
+
     private File getFileBelongsOrganization(UUID fileId, UUID townId) {
         return fileRepository
                 .findByFileIdAndTownTownIdAndDeletedAtIsNull(
@@ -206,4 +434,8 @@ public class FileService {
     private User getUser(JwtAuthenticationToken token) {
         return userRepository.getReferenceById(UUID.fromString(token.getName()));
     }
+
+    private UUID getTownId(JwtAuthenticationToken token) {
+        return transactionTemplate.execute(status -> getUser(token).getTown().getTownId());
+    }
 }
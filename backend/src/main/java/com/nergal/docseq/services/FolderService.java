@@ -1,40 +1,66 @@
 package com.nergal.docseq.services;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
 
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Queue;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.nergal.docseq.dto.files.FileResponseDTO;
+import com.nergal.docseq.dto.folders.FolderArchiveDTO;
 import com.nergal.docseq.dto.folders.FolderContentResponse;
 import com.nergal.docseq.dto.folders.FolderRequestDTO;
+import com.nergal.docseq.dto.folders.FolderResponseDTO;
 import com.nergal.docseq.dto.folders.FolderTreeResponseDTO;
 import com.nergal.docseq.dto.folders.FolderUpdateDTO;
 import com.nergal.docseq.entities.File;
 import com.nergal.docseq.entities.Folder;
 import com.nergal.docseq.entities.Role;
+import com.nergal.docseq.entities.StorageDeletion;
 import com.nergal.docseq.entities.User;
+import com.nergal.docseq.events.FolderTreeChangedEvent;
 import com.nergal.docseq.exception.BadRequestException;
 import com.nergal.docseq.exception.ConflictException;
 import com.nergal.docseq.exception.ForbiddenException;
 import com.nergal.docseq.exception.NotFoundException;
 import com.nergal.docseq.helpers.mappers.FileMapper;
 import com.nergal.docseq.helpers.mappers.FolderMapper;
-import com.nergal.docseq.helpers.mappers.FolderTreeBuilder;
 import com.nergal.docseq.helpers.mappers.PageMapper;
 import com.nergal.docseq.helpers.specifications.FileSpecifications;
 import com.nergal.docseq.helpers.specifications.FolderSpecifications;
 import com.nergal.docseq.repositories.FileRepository;
 import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+import com.nergal.docseq.repositories.TownRepository;
+import com.nergal.docseq.repositories.UploadReservationRepository;
 import com.nergal.docseq.repositories.UserRepository;
 
 import lombok.extern.slf4j.Slf4j;
@@ -43,20 +69,53 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class FolderService {
 
+    // keyset start for the archive pages
+    private static final UUID FIRST = new UUID(0, 0);
+
     private final FolderRepository folderRepository;
     private final FileRepository fileRepository;
     private final UserRepository userRepository;
+    private final TownRepository townRepository;
+    private final BlobService blobService;
     private final StorageService storageService;
+    private final StorageQuotaService storageQuotaService;
+    private final FolderTreeCache folderTreeCache;
+    private final UploadReservationRepository uploadReservationRepository;
+    private final StorageDeletionRepository storageDeletionRepository;
+    private final UploadSessionService uploadSessionService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${downloads.read-ahead:2}")
+    private int downloadReadAhead;
+
+    @Value("${downloads.archive-page-size:500}")
+    private int archivePageSize;
 
     public FolderService(
             FolderRepository folderRepository,
             FileRepository fileRepository,
             UserRepository userRepository,
-            StorageService storageService) {
+            TownRepository townRepository,
+            BlobService blobService,
+            StorageService storageService,
+            StorageQuotaService storageQuotaService,
+            FolderTreeCache folderTreeCache,
+            UploadReservationRepository uploadReservationRepository,
+            StorageDeletionRepository storageDeletionRepository,
+            UploadSessionService uploadSessionService,
+            ApplicationEventPublisher eventPublisher) {
         this.folderRepository = folderRepository;
         this.fileRepository = fileRepository;
         this.userRepository = userRepository;
+        this.townRepository = townRepository;
+        this.blobService = blobService;
         this.storageService = storageService;
+        this.storageQuotaService = storageQuotaService;
+        this.folderTreeCache = folderTreeCache;
+        this.uploadReservationRepository = uploadReservationRepository;
+        this.storageDeletionRepository = storageDeletionRepository;
+        this.uploadSessionService = uploadSessionService;
+        this.eventPublisher = eventPublisher;
     }
 
     // List root folders
@@ -78,7 +137,7 @@ public class FolderService {
                                 ? null
                                 : folderPage.getContent().get(0).parentId(),
                         name), pageable)
-                .map(FileMapper::toResponse);
+                .map(this::toFileResponse);
 
         return new FolderContentResponse(
                 PageMapper.toPageResponse(
@@ -108,7 +167,7 @@ public class FolderService {
 
         var filePage = fileRepository
                 .findAll(FileSpecifications.withSubFoldersFilters(town_id, parentId, name), pageable)
-                .map(FileMapper::toResponse);
+                .map(this::toFileResponse);
 
         return new FolderContentResponse(
                 PageMapper.toPageResponse(
@@ -123,10 +182,22 @@ public class FolderService {
             JwtAuthenticationToken token) {
         var townId = getTownId(token);
 
-        var folders = folderRepository
-                .findByTownTownIdAndDeletedAtIsNull(townId);
+        return folderTreeCache.get(townId).toTree();
+    }
+
+    // Breadcrumb: the folder's ancestors, root first, then the folder itself
+    @Transactional(readOnly = true)
+    public List<FolderResponseDTO> getPath(UUID folderId, JwtAuthenticationToken token) {
+        var townId = getTownId(token);
 
-        return FolderTreeBuilder.build(folders);
+        Folder folder = folderRepository
+                .findByFolderIdAndTownTownIdAndDeletedAtIsNull(folderId, townId)
+                .orElseThrow(() -> new NotFoundException("folder not found"));
+
+        List<FolderResponseDTO> path = new ArrayList<>();
+        folderRepository.findAncestors(folder).forEach(f -> path.add(FolderMapper.toDTO(f)));
+        path.add(FolderMapper.toDTO(folder));
+        return path;
     }
 
     // Create folder
@@ -138,6 +209,8 @@ public class FolderService {
             throw new ForbiddenException("Admins cannot create folders");
         }
 
+        lockTree(user.getTown().getTownId());
+
         Folder parent = null;
         if (dto.parentId() != null) {
             parent = folderRepository.findByFolderIdAndTownTownIdAndDeletedAtIsNull(
@@ -157,6 +230,8 @@ public class FolderService {
         folder.setCreatedBy(user);
 
         folderRepository.save(folder);
+        eventPublisher.publishEvent(FolderTreeChangedEvent.saved(
+                folder, townRepository.nextTreeVersion(user.getTown().getTownId())));
     }
 
     // Update folder
@@ -182,6 +257,9 @@ public class FolderService {
             folder.setName(dto.name());
         if (dto.favorite() != null)
             folder.setFavorite(dto.favorite());
+
+        eventPublisher.publishEvent(FolderTreeChangedEvent.saved(
+                folder, townRepository.nextTreeVersion(user.getTown().getTownId())));
     }
 
     // move folder
@@ -190,6 +268,7 @@ public class FolderService {
 
         var userId = UUID.fromString(token.getName());
         UUID townId = getTownId(token);
+        lockTree(townId);
 
         Folder folder = folderRepository
                 .findByFolderIdAndTownTownIdAndDeletedAtIsNull(
@@ -214,32 +293,25 @@ public class FolderService {
             throw new BadRequestException("Cannot move deleted folders");
         }
 
-        if (isDescendant(folder, target)) {
+        // both paths were read under the lock, so a crossing move cannot slip a cycle past this
+        if (folder.isAncestorOf(target)) {
             throw new BadRequestException("Cannot move folder into its own subtree");
         }
 
+        String oldPrefix = folder.getSubtreePath();
         folder.setParent(target);
         folder.setUpdatedBy(userRepository.getReferenceById(userId));
 
         folderRepository.save(folder);
-    }
-
-    private boolean isDescendant(Folder source, Folder target) {
-        Folder current = target.getParent();
-
-        while (current != null) {
-            if (current.getFolderId().equals(source.getFolderId())) {
-                return true;
-            }
-            current = current.getParent();
-        }
-        return false;
+        eventPublisher.publishEvent(FolderTreeChangedEvent.saved(folder, townRepository.nextTreeVersion(townId)));
+        folderRepository.movePaths(oldPrefix, folder.getSubtreePath());
     }
 
     // Soft delete
     @Transactional
     public void softDelete(UUID folderId, JwtAuthenticationToken token) {
         var user = getUser(token);
+        lockTree(user.getTown().getTownId());
 
         Folder folder = folderRepository
                 .findByFolderIdAndTownTownIdAndDeletedAtIsNull(
@@ -254,45 +326,15 @@ public class FolderService {
     public void softDeleteRecursively(Folder root, User deletedBy) {
         Instant now = Instant.now();
 
-        List<Folder> allFoldersInTown = folderRepository.findByTownTownIdAndDeletedAtIsNull(root.getTown().getTownId());
-        Map<Folder, List<Folder>> parentToChildrenMap = allFoldersInTown.stream()
-                .filter(f -> f.getParent() != null)
-                .collect(Collectors.groupingBy(Folder::getParent));
-
-        List<Folder> foldersToDelete = new ArrayList<>();
-        Queue<Folder> queue = new LinkedList<>();
-
-        if (root.getDeletedAt() == null) {
-            queue.add(root);
-            foldersToDelete.add(root);
-        }
-
-        while (!queue.isEmpty()) {
-            Folder current = queue.poll();
-            List<Folder> children = parentToChildrenMap.getOrDefault(current, Collections.emptyList());
-            for (Folder child : children) {
-                if (child.getDeletedAt() == null) {
-                    foldersToDelete.add(child);
-                    queue.add(child);
-                }
-            }
-        }
-
-        if (foldersToDelete.isEmpty()) {
+        if (root.getDeletedAt() != null) {
             return;
         }
 
-        List<File> filesToDelete = fileRepository.findByFolderInAndDeletedAtIsNull(foldersToDelete);
-
-        for (Folder folder : foldersToDelete) {
-            folder.setDeletedAt(now);
-            folder.setDeletedBy(deletedBy);
-        }
-
-        for (File file : filesToDelete) {
-            file.setDeletedAt(now);
-            file.setDeletedBy(deletedBy);
-        }
+        // files first: they are matched through folders that are still live
+        fileRepository.softDeleteInTree(root.getFolderId(), root.getSubtreePath() + "%", now, deletedBy);
+        folderRepository.softDeleteSubtree(root, now, deletedBy);
+        eventPublisher.publishEvent(FolderTreeChangedEvent.removed(
+                root, townRepository.nextTreeVersion(root.getTown().getTownId())));
     }
 
     // permanent delete
@@ -300,6 +342,7 @@ public class FolderService {
     public void permanentDelete(UUID folderId, JwtAuthenticationToken token) {
 
         UUID townId = getTownId(token);
+        lockTree(townId);
 
         Folder folder = folderRepository.findByFolderIdAndTownTownIdAndDeletedAtIsNotNull(
                 folderId, townId)
@@ -313,40 +356,26 @@ public class FolderService {
 
     @Transactional
     public void permanentDeleteRecursively(Folder root) {
-        List<Folder> allFoldersInTown = folderRepository.findByTownTownId(root.getTown().getTownId());
-        Map<Folder, List<Folder>> parentToChildrenMap = allFoldersInTown.stream()
-                .filter(f -> f.getParent() != null)
-                .collect(Collectors.groupingBy(Folder::getParent));
-
-        List<Folder> foldersToDelete = new ArrayList<>();
-        Queue<Folder> queue = new LinkedList<>();
-
-        queue.add(root);
-        foldersToDelete.add(root);
-
-        while (!queue.isEmpty()) {
-            Folder current = queue.poll();
-            List<Folder> children = parentToChildrenMap.getOrDefault(current, Collections.emptyList());
-            foldersToDelete.addAll(children);
-            queue.addAll(children);
-        }
+        long bytes = fileRepository.sumSizeInTree(root.getFolderId(), root.getSubtreePath() + "%");
 
-        if (foldersToDelete.isEmpty()) {
-            return;
-        }
+        // storage objects are removed by StorageDeletionWorker once this commits
+        blobService.deleteFilesInTree(root);
+        deleteUploadsInTree(root);
+        folderRepository.deleteSubtree(root);
 
-        List<File> filesToDelete = fileRepository.findByFolderIn(foldersToDelete);
+        storageQuotaService.release(root.getTown().getTownId(), bytes);
+    }
 
-        fileRepository.deleteAll(filesToDelete);
-        folderRepository.deleteAll(foldersToDelete);
+    // Pending uploads into the subtree would otherwise block the folder delete
+    private void deleteUploadsInTree(Folder root) {
+        UUID rootId = root.getFolderId();
+        String pattern = root.getSubtreePath() + "%";
 
-        for (File file : filesToDelete) {
-            try {
-                storageService.delete(file.getObjectKey());
-            } catch (Exception e) {
-                log.error("Failed to delete file from storage: {}", e.getMessage());
-            }
-        }
+        storageDeletionRepository.saveAll(uploadReservationRepository.findStagingKeysInTree(rootId, pattern).stream()
+                .map(stagingKey -> new StorageDeletion(stagingKey, null))
+                .toList());
+        uploadReservationRepository.deleteInTree(rootId, pattern);
+        uploadSessionService.deleteInTree(root);
     }
 
     // List trash can
@@ -366,7 +395,7 @@ public class FolderService {
                 .findByTownTownIdAndDeletedAtIsNotNull(
                         townId,
                         pageable)
-                .map(FileMapper::toResponse);
+                .map(this::toFileResponse);
 
         return new FolderContentResponse(
                 PageMapper.toPageResponse(
@@ -379,6 +408,7 @@ public class FolderService {
     @Transactional
     public void restore(UUID folderId, JwtAuthenticationToken token) {
         UUID townId = getTownId(token);
+        lockTree(townId);
 
         Folder folder = folderRepository
                 .findByFolderIdAndTownTownIdAndDeletedAtIsNotNull(
@@ -390,45 +420,132 @@ public class FolderService {
 
     @Transactional
     public void restoreRecursively(Folder root) {
-        List<Folder> allDeletedFoldersInTown = folderRepository
-                .findByTownTownIdAndDeletedAtIsNotNull(root.getTown().getTownId(), Pageable.unpaged()).getContent();
-        Map<Folder, List<Folder>> parentToChildrenMap = allDeletedFoldersInTown.stream()
-                .filter(f -> f.getParent() != null)
-                .collect(Collectors.groupingBy(Folder::getParent));
-
-        List<Folder> foldersToRestore = new ArrayList<>();
-        Queue<Folder> queue = new LinkedList<>();
+        Instant now = Instant.now();
 
-        if (root.getDeletedAt() != null) {
-            queue.add(root);
-            foldersToRestore.add(root);
+        if (root.getDeletedAt() == null) {
+            return;
         }
 
-        while (!queue.isEmpty()) {
-            Folder current = queue.poll();
-            List<Folder> children = parentToChildrenMap.getOrDefault(current, Collections.emptyList());
-            for (Folder child : children) {
-                if (child.getDeletedAt() != null) {
-                    foldersToRestore.add(child);
-                    queue.add(child);
+        // files first: they are matched through folders that are still deleted
+        fileRepository.restoreInTree(root.getFolderId(), root.getSubtreePath() + "%", now);
+        folderRepository.restoreSubtree(root, now);
+        UUID townId = root.getTown().getTownId();
+        eventPublisher.publishEvent(FolderTreeChangedEvent.reload(townId, townRepository.nextTreeVersion(townId)));
+    }
+
+    // Lays out the live subtree as ZIP paths; the bytes are written later by writeArchive
+    @Transactional(readOnly = true)
+    public FolderArchiveDTO getArchive(UUID folderId, JwtAuthenticationToken token) {
+        UUID townId = getTownId(token);
+
+        Folder root = folderRepository
+                .findByFolderIdAndTownTownIdAndDeletedAtIsNull(folderId, townId)
+                .orElseThrow(() -> new NotFoundException("folder not found"));
+
+        String pattern = root.getSubtreePath() + "%";
+        List<String> directories = new ArrayList<>();
+        Map<UUID, String> folderPaths = new HashMap<>();
+        Set<String> used = new HashSet<>();
+
+        folderPaths.put(root.getFolderId(), "");
+
+        // only id, parent and name per folder, a page at a time; parents are laid out before their children
+        String afterPath = "";
+        UUID afterFolder = FIRST;
+        List<FolderRepository.ArchiveFolder> rows;
+        do {
+            rows = folderRepository.findArchiveFoldersAfter(
+                    pattern, afterPath.length(), afterPath, afterFolder, archivePageSize);
+            for (FolderRepository.ArchiveFolder row : rows) {
+                String parent = folderPaths.get(row.getParentId());
+                if (parent != null) {
+                    String path = uniquePath(parent, row.getName(), "/", used);
+                    folderPaths.put(row.getFolderId(), path);
+                    directories.add(path);
                 }
+                afterPath = row.getPath();
+                afterFolder = row.getFolderId();
             }
-        }
+        } while (rows.size() == archivePageSize);
 
-        if (foldersToRestore.isEmpty()) {
-            return;
-        }
+        return new FolderArchiveDTO(root.getName(), root.getFolderId(), pattern, directories, folderPaths);
+    }
 
-        List<File> filesToRestore = fileRepository.findByFolderInAndDeletedAtIsNotNull(foldersToRestore);
+    /*
+     * Pipes each object straight into the ZIP. Files are read in keyset pages
+     * as the ZIP is written and the next few objects are opened ahead of time,
+     * so at most one page and downloadReadAhead streams are held at once
+     * whatever the folder size. The response is already committed by then, so
+     * an object that cannot be read is left out and listed in MISSING.txt
+     * rather than cutting the ZIP short.
+     */
+    public void writeArchive(FolderArchiveDTO archive, OutputStream out) throws IOException {
+        Iterator<FolderArchiveDTO.Entry> files = new ArchiveFiles(archive);
+        Deque<Opening> ahead = new ArrayDeque<>();
+        List<String> missing = new ArrayList<>();
+        // root-level names, so MISSING.txt does not clash with a file of that name
+        Set<String> rootNames = new HashSet<>();
+
+        try (ExecutorService opener = Executors.newVirtualThreadPerTaskExecutor();
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            // PDFs are already compressed
+            zip.setLevel(Deflater.NO_COMPRESSION);
+
+            for (String directory : archive.directories()) {
+                zip.putNextEntry(new ZipEntry(directory));
+                zip.closeEntry();
+                if (directory.indexOf('/') == directory.length() - 1) {
+                    rootNames.add(directory);
+                }
+            }
 
-        for (Folder folder : foldersToRestore) {
-            folder.setDeletedAt(null);
-            folder.setDeletedBy(null);
-        }
+            try {
+                while (true) {
+                    while (files.hasNext() && ahead.size() <= downloadReadAhead) {
+                        FolderArchiveDTO.Entry file = files.next();
+                        ahead.add(new Opening(file, opener.submit(() -> storageService.open(file.objectKey()))));
+                    }
+
+                    Opening next = ahead.poll();
+                    if (next == null) {
+                        break;
+                    }
+
+                    String path = next.file().path();
+                    if (path.indexOf('/') < 0) {
+                        rootNames.add(path);
+                    }
+
+                    InputStream opened = await(next.stream(), next.file());
+                    if (opened == null) {
+                        missing.add(path);
+                        continue;
+                    }
+
+                    try (InputStream in = opened) {
+                        zip.putNextEntry(new ZipEntry(path));
+                        if (!copy(in, zip, next.file())) {
+                            missing.add(path + " (incomplete)");
+                        }
+                        zip.closeEntry();
+                    }
+                }
 
-        for (File file : filesToRestore) {
-            file.setDeletedAt(null);
-            file.setDeletedBy(null);
+                if (!missing.isEmpty()) {
+                    zip.putNextEntry(new ZipEntry(uniquePath("", "MISSING.txt", "", rootNames)));
+                    zip.write(("These files could not be read and are missing from this archive:\n"
+                            + String.join("\n", missing) + "\n").getBytes(StandardCharsets.UTF_8));
+                    zip.closeEntry();
+                }
+            } finally {
+                for (Opening pending : ahead) {
+                    try (InputStream ignored = pending.stream().get()) {
+                        // opened ahead but never written
+                    } catch (Exception e) {
+                        log.debug("Discarding read-ahead stream failed", e);
+                    }
+                }
+            }
         }
     }
 
@@ -444,6 +561,8 @@ public class FolderService {
                 .orElseThrow(() -> new NotFoundException("folder not found"));
 
         folder.setFavorite(!folder.getFavorite());
+        eventPublisher.publishEvent(FolderTreeChangedEvent.saved(
+                folder, townRepository.nextTreeVersion(user.getTown().getTownId())));
     }
 
     // Auxiliary methods
@@ -455,4 +574,128 @@ public class FolderService {
     private UUID getTownId(JwtAuthenticationToken token) {
         return getUser(token).getTown().getTownId();
     }
+
+    /*
+     * Children copy their parent's path and subtree statements match by path
+     * prefix, so creates, moves, deletes and restores in a town run one at a
+     * time. Take it before loading the folders involved.
+     */
+    private void lockTree(UUID townId) {
+        townRepository.lockFolderTree(townId);
+    }
+
+    // ZIP paths must be unique; later duplicates become "name (2).pdf"
+    private static String uniquePath(String parent, String name, String suffix, Set<String> used) {
+        String safe = name.replace('/', '_').replace('\\', '_');
+        int dot = suffix.isEmpty() ? safe.lastIndexOf('.') : -1;
+        String base = dot > 0 ? safe.substring(0, dot) : safe;
+        String extension = dot > 0 ? safe.substring(dot) : "";
+
+        String path = parent + safe + suffix;
+        for (int n = 2; !used.add(path); n++) {
+            path = parent + base + " (" + n + ")" + extension + suffix;
+        }
+        return path;
+    }
+
+    // Null when the object could not be opened
+    private static InputStream await(Future<InputStream> opening, FolderArchiveDTO.Entry file) throws IOException {
+        try {
+            return opening.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening " + file.path());
+        } catch (ExecutionException e) {
+            log.warn("Leaving {} ({}) out of the archive", file.path(), file.objectKey(), e.getCause());
+            return null;
+        }
+    }
+
+    // False when the object could not be read to the end; failures writing the ZIP still throw
+    private static boolean copy(InputStream in, OutputStream zip, FolderArchiveDTO.Entry file) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        while (true) {
+            int n;
+            try {
+                n = in.read(buffer);
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                log.warn("Reading {} ({}) failed partway; the archive keeps what was read", file.path(),
+                        file.objectKey(), e);
+                return false;
+            }
+            if (n < 0) {
+                return true;
+            }
+            zip.write(buffer, 0, n);
+        }
+    }
+
+    private record Opening(FolderArchiveDTO.Entry file, Future<InputStream> stream) {
+    }
+
+    // Pages through the archive's files; rows come grouped by folder, so ZIP names only need to be unique per folder
+    private final class ArchiveFiles implements Iterator<FolderArchiveDTO.Entry> {
+
+        private final FolderArchiveDTO archive;
+        private final Set<String> used = new HashSet<>();
+        private Iterator<FileRepository.ArchiveFile> page = Collections.emptyIterator();
+        private boolean lastPage;
+        private UUID afterFolder = FIRST;
+        private UUID afterFile = FIRST;
+        private FolderArchiveDTO.Entry next;
+
+        ArchiveFiles(FolderArchiveDTO archive) {
+            this.archive = archive;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (!page.hasNext()) {
+                    if (lastPage) {
+                        return false;
+                    }
+                    List<FileRepository.ArchiveFile> rows = fileRepository.findArchiveFilesAfter(
+                            archive.rootId(), archive.subtreePattern(), afterFolder, afterFile, archivePageSize);
+                    lastPage = rows.size() < archivePageSize;
+                    page = rows.iterator();
+                    continue;
+                }
+
+                FileRepository.ArchiveFile row = page.next();
+                if (!row.getFolderId().equals(afterFolder)) {
+                    used.clear();
+                }
+                afterFolder = row.getFolderId();
+                afterFile = row.getFileId();
+
+                // a folder created after the layout was taken is left out
+                String parent = archive.folderPaths().get(row.getFolderId());
+                if (parent != null) {
+                    next = new FolderArchiveDTO.Entry(uniquePath(parent, row.getName(), "", used), row.getObjectKey());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public FolderArchiveDTO.Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FolderArchiveDTO.Entry entry = next;
+            next = null;
+            return entry;
+        }
+    }
+
+    private FileResponseDTO toFileResponse(File file) {
+        String thumbnailUrl = file.getThumbnailKey() != null
+                ? storageService.generateTemporaryUrl(file.getThumbnailKey())
+                : null;
+        return FileMapper.toResponse(file, thumbnailUrl);
+    }
 }
@@ -0,0 +1,86 @@
+package com.nergal.docseq.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.nergal.docseq.events.FolderTreeChangedEvent;
+import com.nergal.docseq.helpers.cache.FolderTreeSnapshot;
+import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.TownRepository;
+
+/*
+ * Per-town folder tree snapshots, read once and then patched copy-on-write
+ * from committed changes. Every change bumps the town's tree_version; reads
+ * check it before serving a snapshot, so changes committed on other instances
+ * are seen at once, and a patch only lands on the snapshot right before it.
+ */
+@Service
+public class FolderTreeCache {
+
+    private final FolderRepository folderRepository;
+    private final TownRepository townRepository;
+    private final Map<UUID, FolderTreeSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public FolderTreeCache(FolderRepository folderRepository, TownRepository townRepository) {
+        this.folderRepository = folderRepository;
+        this.townRepository = townRepository;
+    }
+
+    // Loads outside the map, so the query never holds a bin lock that patches and other towns wait on
+    public FolderTreeSnapshot get(UUID townId) {
+        long version = townRepository.findTreeVersion(townId);
+        FolderTreeSnapshot cached = snapshots.get(townId);
+        if (cached != null && cached.getVersion() >= version) {
+            return cached;
+        }
+
+        // the rows are read after the version, so they are at least that new; a change
+        // committed in between is patched in again, which is harmless
+        FolderTreeSnapshot loaded = load(townId, version);
+        return snapshots.merge(townId, loaded,
+                (current, candidate) -> current.getVersion() >= candidate.getVersion() ? current : candidate);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onFolderTreeChanged(FolderTreeChangedEvent event) {
+        snapshots.computeIfPresent(event.townId(), (townId, snapshot) -> {
+            if (snapshot.getVersion() >= event.version()) {
+                // read after this change committed
+                return snapshot;
+            }
+            if (snapshot.getVersion() != event.version() - 1) {
+                // a change in between was missed, e.g. one from another instance
+                return null;
+            }
+            return switch (event.change()) {
+                case SAVED -> snapshot.withFolder(
+                        event.folderId(), event.parentId(), event.name(), event.favorite(), event.version());
+                case REMOVED -> snapshot.withoutSubtree(event.folderId(), event.version());
+                case RELOAD -> null;
+            };
+        });
+    }
+
+    private FolderTreeSnapshot load(UUID townId, long version) {
+        List<FolderRepository.TreeRow> rows = folderRepository.findTreeRows(townId);
+
+        List<UUID> ids = new ArrayList<>(rows.size());
+        List<UUID> parentIds = new ArrayList<>(rows.size());
+        List<String> names = new ArrayList<>(rows.size());
+        List<Boolean> favorites = new ArrayList<>(rows.size());
+        for (FolderRepository.TreeRow row : rows) {
+            ids.add(row.getFolderId());
+            parentIds.add(row.getParentId());
+            names.add(row.getName());
+            favorites.add(row.getFavorite());
+        }
+        return FolderTreeSnapshot.of(version, ids, parentIds, names, favorites);
+    }
+}
@@ -0,0 +1,213 @@
+package com.nergal.docseq.services;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import com.nergal.docseq.dto.files.FileDownloadDTO;
+import com.nergal.docseq.dto.storage.PresignedUploadDTO;
+import com.nergal.docseq.dto.storage.StoredObjectDTO;
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+ * Times every call to the wrapped backend and counts bytes and failures.
+ * Meters are tagged with backend and operation:
+ *   storage.requests         timer with p50/p95/p99 and a histogram, plus outcome
+ *   storage.errors           counter, plus the exception type
+ *   storage.bytes            counter, plus direction (in = written, out = read)
+ */
+public class InstrumentedStorageService implements StorageService {
+
+    private static final Duration SLO_FLOOR = Duration.ofMillis(5);
+    private static final Duration SLO_CEILING = Duration.ofMinutes(2);
+
+    private final StorageService delegate;
+    private final String backend;
+    private final MeterRegistry meterRegistry;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+
+    public InstrumentedStorageService(StorageService delegate, String backend, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.backend = backend;
+        this.meterRegistry = meterRegistry;
+        this.bytesIn = bytes("in");
+        this.bytesOut = bytes("out");
+    }
+
+    @Override
+    public String upload(MultipartFile file, String name) {
+        String key = record("upload", () -> delegate.upload(file, name));
+        bytesIn.increment(file.getSize());
+        return key;
+    }
+
+    @Override
+    public void put(String storageKey, byte[] content, String contentType) {
+        record("put", () -> {
+            delegate.put(storageKey, content, contentType);
+            return null;
+        });
+        bytesIn.increment(content.length);
+    }
+
+    // Times opening the stream; bytes are counted as the caller reads them
+    @Override
+    public InputStream open(String storageKey) {
+        return new CountingInputStream(record("open", () -> delegate.open(storageKey)));
+    }
+
+    @Override
+    public void delete(String storageKey) {
+        record("delete", () -> {
+            delegate.delete(storageKey);
+            return null;
+        });
+    }
+
+    @Override
+    public Set<String> deleteAll(Collection<String> storageKeys) {
+        Set<String> failed = record("deleteAll", () -> delegate.deleteAll(storageKeys));
+        if (!failed.isEmpty()) {
+            errors("deleteAll", "PartialFailure").increment(failed.size());
+        }
+        return failed;
+    }
+
+    @Override
+    public String generateTemporaryUrl(String storageKey) {
+        return record("generateTemporaryUrl", () -> delegate.generateTemporaryUrl(storageKey));
+    }
+
+    @Override
+    public PresignedUploadDTO presignUpload(String storageKey, long size, String contentType, String contentHash) {
+        return record("presignUpload", () -> delegate.presignUpload(storageKey, size, contentType, contentHash));
+    }
+
+    @Override
+    public Optional<StoredObjectDTO> head(String storageKey) {
+        return record("head", () -> delegate.head(storageKey));
+    }
+
+    @Override
+    public List<StoredObjectSummaryDTO> list(String startAfter, int limit) {
+        return record("list", () -> delegate.list(startAfter, limit));
+    }
+
+    @Override
+    public String promote(String stagingKey, String name) {
+        return record("promote", () -> delegate.promote(stagingKey, name));
+    }
+
+    @Override
+    public void serve(FileDownloadDTO file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.serve(file, request, response);
+            timer("serve", "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (IOException | RuntimeException e) {
+            failed("serve", start, e);
+            throw e;
+        }
+    }
+
+    /* ========================= */
+    /* Helpers */
+    /* ========================= */
+
+    private <T> T record(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            timer(operation, "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            failed(operation, start, e);
+            throw e;
+        }
+    }
+
+    private void failed(String operation, long start, Exception e) {
+        timer(operation, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        // the storage services wrap SDK exceptions, the cause says what actually went wrong
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        errors(operation, cause.getClass().getSimpleName()).increment();
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return Timer.builder("storage.requests")
+                .tag("backend", backend)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(SLO_FLOOR)
+                .maximumExpectedValue(SLO_CEILING)
+                .register(meterRegistry);
+    }
+
+    private Counter errors(String operation, String exception) {
+        return Counter.builder("storage.errors")
+                .tag("backend", backend)
+                .tag("operation", operation)
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+    private Counter bytes(String direction) {
+        return Counter.builder("storage.bytes")
+                .baseUnit("bytes")
+                .tag("backend", backend)
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                bytesOut.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytesOut.increment(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            long n = in.transferTo(out);
+            bytesOut.increment(n);
+            return n;
+        }
+    }
+}
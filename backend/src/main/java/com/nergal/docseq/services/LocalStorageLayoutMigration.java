@@ -0,0 +1,102 @@
+package com.nergal.docseq.services;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.nergal.docseq.repositories.BlobRepository;
+import com.nergal.docseq.repositories.FileRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Moves objects from the legacy flat layout into the fan-out layout while the
+ * application keeps serving. Each object is linked at its new path first, then
+ * the rows are repointed in one transaction, and only then is the old path
+ * removed, so every key visible in the database resolves at all times.
+ */
+@Slf4j
+@Service
+@Profile("dev")
+public class LocalStorageLayoutMigration {
+
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public LocalStorageLayoutMigration(
+            BlobRepository blobRepository,
+            FileRepository fileRepository,
+            TransactionTemplate transactionTemplate) {
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public void migrate() {
+        if (!Files.isDirectory(LocalStorageService.ROOT)) {
+            return;
+        }
+
+        int moved = 0;
+        int failed = 0;
+
+        try (DirectoryStream<Path> legacy = Files.newDirectoryStream(LocalStorageService.ROOT, "*.pdf")) {
+            for (Path source : legacy) {
+                if (!Files.isRegularFile(source)) {
+                    continue;
+                }
+                try {
+                    migrate(source);
+                    moved++;
+                } catch (Exception e) {
+                    failed++;
+                    log.error("Failed to migrate {}: {}", source, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Storage layout migration failed", e);
+        }
+
+        log.info("Storage layout migration finished: {} moved, {} failed", moved, failed);
+    }
+
+    private void migrate(Path source) throws IOException {
+        String fileName = source.getFileName().toString();
+        String oldKey = "uploads/" + fileName;
+        String newKey = LocalStorageService.objectKey(StringUtils.stripFilenameExtension(fileName));
+
+        Path target = Paths.get(newKey);
+        Files.createDirectories(target.getParent());
+        link(source, target);
+
+        // the blob row is updated first: uploads of the same content lock it too,
+        // so they either commit before the file rows are repointed or read the new key
+        transactionTemplate.executeWithoutResult(status -> {
+            blobRepository.updateObjectKey(oldKey, newKey);
+            fileRepository.updateObjectKey(oldKey, newKey);
+        });
+
+        Files.delete(source);
+    }
+
+    private void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            // left behind by an interrupted run
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+}
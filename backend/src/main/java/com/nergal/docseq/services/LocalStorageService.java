@@ -1,30 +1,47 @@
 package com.nergal.docseq.services;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.nergal.docseq.dto.files.FileDownloadDTO;
+import com.nergal.docseq.dto.storage.PresignedUploadDTO;
+import com.nergal.docseq.dto.storage.StoredObjectDTO;
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+import com.nergal.docseq.exception.BadRequestException;
+import com.nergal.docseq.helpers.http.FileRangeResponder;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 @Service
 @Profile("dev")
 public class LocalStorageService implements StorageService {
 
-    private static final Path ROOT = Paths.get("uploads");
+    static final Path ROOT = Paths.get("uploads");
 
     @Override
-    public String upload(MultipartFile file, UUID fileId) {
+    public String upload(MultipartFile file, String name) {
         try {
-            Files.createDirectories(ROOT);
+            String objectKey = objectKey(name);
 
-            String objectKey = "uploads/" + fileId + ".pdf";
-
-            Path target = ROOT.resolve(fileId + ".pdf");
+            Path target = Paths.get(objectKey);
+            Files.createDirectories(target.getParent());
             Files.copy(file.getInputStream(), target, StandardCopyOption.REPLACE_EXISTING);
 
             return objectKey;
@@ -34,6 +51,18 @@ public class LocalStorageService implements StorageService {
         }
     }
 
+    /*
+     * Objects fan out into two directory levels taken from the name, e.g.
+     * uploads/ab/cd/abcd....pdf. Keys stored before the fan-out stay flat
+     * (uploads/<name>.pdf) and keep working since keys are plain paths.
+     */
+    static String objectKey(String name) {
+        if (name.length() < 4) {
+            return "uploads/" + name + ".pdf";
+        }
+        return "uploads/" + name.substring(0, 2) + "/" + name.substring(2, 4) + "/" + name + ".pdf";
+    }
+
     @Override
     public void delete(String storageKey) {
         try {
@@ -42,8 +71,138 @@ public class LocalStorageService implements StorageService {
         }
     }
 
+    @Override
+    public void put(String storageKey, byte[] content, String contentType) {
+        try {
+            Path target = Paths.get(storageKey);
+            Files.createDirectories(target.getParent());
+            Files.write(target, content);
+        } catch (IOException e) {
+            throw new RuntimeException("File write failed", e);
+        }
+    }
+
+    @Override
+    public InputStream open(String storageKey) {
+        try {
+            return Files.newInputStream(Paths.get(storageKey));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading stored file", e);
+        }
+    }
+
+    @Override
+    public Set<String> deleteAll(Collection<String> storageKeys) {
+        Set<String> failed = new HashSet<>();
+        for (String storageKey : storageKeys) {
+            try {
+                Files.deleteIfExists(Paths.get(storageKey));
+            } catch (IOException e) {
+                failed.add(storageKey);
+            }
+        }
+        return failed;
+    }
+
     @Override
     public String generateTemporaryUrl(String storageKey) {
         return "http://localhost:9090/" + storageKey;
     }
+
+    @Override
+    public PresignedUploadDTO presignUpload(String storageKey, long size, String contentType, String contentHash) {
+        throw new BadRequestException("Direct uploads are not supported by local storage");
+    }
+
+    @Override
+    public Optional<StoredObjectDTO> head(String storageKey) {
+        Path path = Paths.get(storageKey);
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new StoredObjectDTO(Files.size(path), Files.probeContentType(path), null));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading stored file", e);
+        }
+    }
+
+    // Walks the shard directories in key order, skipping those wholly before startAfter, and stops once the page is full
+    @Override
+    public List<StoredObjectSummaryDTO> list(String startAfter, int limit) {
+        if (!Files.isDirectory(ROOT)) {
+            return List.of();
+        }
+
+        List<StoredObjectSummaryDTO> objects = new ArrayList<>();
+        try {
+            listInto(ROOT, ROOT.getFileName() + "/", startAfter, limit, objects);
+        } catch (IOException e) {
+            throw new RuntimeException("Error listing stored files", e);
+        }
+        return objects;
+    }
+
+    private static void listInto(
+            Path directory,
+            String prefix,
+            String startAfter,
+            int limit,
+            List<StoredObjectSummaryDTO> objects) throws IOException {
+        // a directory sorts as its name plus "/", which is where its keys fall among its siblings
+        TreeMap<String, Path> entries = new TreeMap<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                entries.put(Files.isDirectory(child) ? name + "/" : name, child);
+            }
+        }
+
+        for (var entry : entries.entrySet()) {
+            if (objects.size() >= limit) {
+                return;
+            }
+            String key = prefix + entry.getKey();
+            Path path = entry.getValue();
+
+            if (key.endsWith("/")) {
+                if (startAfter == null || key.compareTo(startAfter) > 0 || startAfter.startsWith(key)) {
+                    listInto(path, key, startAfter, limit, objects);
+                }
+            } else if (Files.isRegularFile(path) && (startAfter == null || key.compareTo(startAfter) > 0)) {
+                objects.add(new StoredObjectSummaryDTO(
+                        key,
+                        Files.size(path),
+                        Files.getLastModifiedTime(path).toInstant()));
+            }
+        }
+    }
+
+    @Override
+    public String promote(String stagingKey, String name) {
+        try {
+            String objectKey = objectKey(name);
+
+            Path target = Paths.get(objectKey);
+            Files.createDirectories(target.getParent());
+            Files.copy(Paths.get(stagingKey), target, StandardCopyOption.REPLACE_EXISTING);
+
+            return objectKey;
+
+        } catch (IOException e) {
+            throw new RuntimeException("File promotion failed", e);
+        }
+    }
+
+    @Override
+    public void serve(FileDownloadDTO file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        FileRangeResponder.write(
+                Paths.get(file.objectKey()),
+                file.contentType(),
+                file.name(),
+                FileRangeResponder.eTagFor(file.objectKey()),
+                request,
+                response);
+    }
 }
@@ -2,25 +2,86 @@ package com.nergal.docseq.services;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+
+import com.nergal.docseq.dto.files.FileDownloadDTO;
+import com.nergal.docseq.dto.storage.PresignedUploadDTO;
+import com.nergal.docseq.dto.storage.StoredObjectDTO;
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+import com.nergal.docseq.exception.NotFoundException;
+import com.nergal.docseq.helpers.cache.PresignedUrlCache;
+import com.nergal.docseq.helpers.http.FileRangeResponder;
+import com.nergal.docseq.helpers.http.ImmutableContent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.UUID;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+@Slf4j
 @Service
 @Profile("prod")
 public class R2StorageService implements StorageService {
 
+    private static final int MAX_PARTS = 10_000;
+    private static final int MAX_DELETE_BATCH = 1000;
+    private static final int MAX_LIST_PAGE = 1000;
+    private static final int PROXY_BUFFER_SIZE = 64 * 1024;
+
+    // A retried create leaves an orphaned upload behind, and a retried complete
+    // fails with NoSuchUpload after the first attempt went through
+    private static final AwsRequestOverrideConfiguration NO_RETRY = AwsRequestOverrideConfiguration.builder()
+            .addPlugin(config -> config.overrideConfiguration(o -> o.retryStrategy(AwsRetryStrategy.doNotRetry())))
+            .build();
+
     private final S3Client s3Client;
     private final S3Presigner s3Presigner;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService partExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     @Value("${cloudflare.r2.bucket-name}")
     private String bucketName;
@@ -28,34 +89,249 @@ public class R2StorageService implements StorageService {
     @Value("${cloudflare.r2.url-expiration-minutes}")
     private int urlExpirationMinutes;
 
-    public R2StorageService(S3Client s3Client, S3Presigner s3Presigner) {
+    @Value("${cloudflare.r2.multipart.threshold:32MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${cloudflare.r2.multipart.part-size:16MB}")
+    private DataSize multipartPartSize;
+
+    @Value("${cloudflare.r2.multipart.concurrency:4}")
+    private int multipartConcurrency;
+
+    @Value("${cloudflare.r2.upload-url-expiration-minutes:15}")
+    private int uploadUrlExpirationMinutes;
+
+    @Value("${cloudflare.r2.url-cache.max-entries:10000}")
+    private int urlCacheMaxEntries;
+
+    @Value("${cloudflare.r2.proxy-downloads:true}")
+    private boolean proxyDownloads;
+
+    private PresignedUrlCache urlCache;
+
+    public R2StorageService(S3Client s3Client, S3Presigner s3Presigner, MeterRegistry meterRegistry) {
         this.s3Client = s3Client;
         this.s3Presigner = s3Presigner;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        urlCache = new PresignedUrlCache(
+                urlCacheMaxEntries,
+                Duration.ofMinutes(urlExpirationMinutes),
+                meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        partExecutor.shutdownNow();
     }
 
     @Override
-    public String upload(MultipartFile file, UUID fileId) {
+    public String upload(MultipartFile file, String name) {
+        String fileName = generateFileName(file.getOriginalFilename(), name);
+
         try {
-            String fileName = generateFileName(file.getOriginalFilename(), fileId);
+            if (file.getSize() >= multipartThreshold.toBytes()) {
+                uploadMultipart(file, fileName);
+            } else {
+                uploadSingle(file, fileName);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Error uploading to Cloudflare R2", e);
+        }
 
-            byte[] fileBytes = file.getBytes();
+        return fileName;
+    }
 
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+    private void uploadSingle(MultipartFile file, String fileName) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileName)
+                .contentType(file.getContentType())
+                .contentLength(file.getSize())
+                .cacheControl(ImmutableContent.PUBLIC.getHeaderValue())
+                .build();
+
+        // The SDK pulls the body through the stream (and re-opens it on retries),
+        // so the upload never holds more than its transfer buffer in memory.
+        RequestBody body = RequestBody.fromContentProvider(
+                () -> openStream(file),
+                file.getSize(),
+                file.getContentType());
+
+        s3Client.putObject(putObjectRequest, body);
+    }
+
+    private void uploadMultipart(MultipartFile file, String fileName) {
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(fileName)
+                .contentType(file.getContentType())
+                .cacheControl(ImmutableContent.PUBLIC.getHeaderValue())
+                .overrideConfiguration(NO_RETRY)
+                .build())
+                .uploadId();
+
+        try {
+            List<CompletedPart> parts = uploadParts(file, fileName, uploadId);
+            completeMultipart(fileName, uploadId, parts, file.getSize());
+
+        } catch (RuntimeException e) {
+            abortMultipart(fileName, uploadId);
+            throw e;
+        }
+    }
+
+    private void completeMultipart(String fileName, String uploadId, List<CompletedPart> parts, long size) {
+        try {
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
                     .bucket(bucketName)
                     .key(fileName)
-                    .contentType(file.getContentType())
-                    .contentLength((long) fileBytes.length)
-                    .build();
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder()
+                            .parts(parts)
+                            .build())
+                    .overrideConfiguration(NO_RETRY)
+                    .build());
 
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(fileBytes));
+        } catch (RuntimeException e) {
+            // a lost response leaves the object in place; the key is content-addressed, so its size is enough
+            if (completed(fileName, size)) {
+                log.warn("Completing multipart upload {} for {} failed after it went through: {}",
+                        uploadId, fileName, e.getMessage());
+                return;
+            }
+            throw e;
+        }
+    }
 
-            return fileName;
+    private boolean completed(String fileName, long size) {
+        try {
+            return head(fileName).map(stored -> stored.size() == size).orElse(false);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
 
-        } catch (IOException e) {
+    private List<CompletedPart> uploadParts(MultipartFile file, String fileName, String uploadId) {
+        long size = file.getSize();
+        long partSize = Math.max(multipartPartSize.toBytes(), (size + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) ((size + partSize - 1) / partSize);
+
+        Semaphore inFlight = new Semaphore(multipartConcurrency);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<CompletedPart>> futures = new ArrayList<>(partCount);
+
+        try {
+            for (int i = 0; i < partCount && !failed.get(); i++) {
+                int partNumber = i + 1;
+                long offset = i * partSize;
+                long length = Math.min(partSize, size - offset);
+
+                inFlight.acquire();
+                futures.add(partExecutor.submit(() -> {
+                    try {
+                        return uploadPart(file, fileName, uploadId, partNumber, offset, length);
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            List<CompletedPart> parts = new ArrayList<>(partCount);
+            for (Future<CompletedPart> future : futures) {
+                parts.add(future.get());
+            }
+            return parts;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Multipart upload interrupted", e);
+
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException("Error uploading part to Cloudflare R2", e.getCause());
+        }
+    }
+
+    private CompletedPart uploadPart(
+            MultipartFile file,
+            String fileName,
+            String uploadId,
+            int partNumber,
+            long offset,
+            long length) {
+
+        UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(fileName)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength(length)
+                .build();
+
+        // Each part opens its own view of the spooled upload, so parts are read
+        // independently and nothing beyond the transfer buffers is held in memory.
+        RequestBody body = RequestBody.fromContentProvider(
+                () -> openSlice(file, offset, length),
+                length,
+                file.getContentType());
+
+        String eTag = s3Client.uploadPart(uploadPartRequest, body).eTag();
+
+        return CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag(eTag)
+                .build();
+    }
+
+    private void abortMultipart(String fileName, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(fileName)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (Exception e) {
+            log.error("Failed to abort multipart upload {} for {}: {}", uploadId, fileName, e.getMessage());
+        }
+    }
+
+    @Override
+    public void put(String storageKey, byte[] content, String contentType) {
+        try {
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(storageKey)
+                    .contentType(contentType)
+                    .cacheControl(ImmutableContent.PUBLIC.getHeaderValue())
+                    .build(),
+                    RequestBody.fromBytes(content));
+
+        } catch (Exception e) {
             throw new RuntimeException("Error uploading to Cloudflare R2", e);
         }
     }
 
+    @Override
+    public InputStream open(String storageKey) {
+        try {
+            return s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(storageKey)
+                    .build());
+
+        } catch (Exception e) {
+            throw new RuntimeException("Error reading file from R2", e);
+        }
+    }
+
     @Override
     public void delete(String storageKey) {
         try {
@@ -65,19 +341,64 @@ public class R2StorageService implements StorageService {
                     .build();
 
             s3Client.deleteObject(deleteObjectRequest);
+            urlCache.invalidate(storageKey);
 
         } catch (Exception e) {
             throw new RuntimeException("Error deleting file from R2", e);
         }
     }
 
+    @Override
+    public Set<String> deleteAll(Collection<String> storageKeys) {
+        List<String> keys = List.copyOf(storageKeys);
+        Set<String> failed = new HashSet<>();
+
+        for (int i = 0; i < keys.size(); i += MAX_DELETE_BATCH) {
+            List<String> batch = keys.subList(i, Math.min(i + MAX_DELETE_BATCH, keys.size()));
+
+            List<ObjectIdentifier> objects = batch.stream()
+                    .map(key -> ObjectIdentifier.builder().key(key).build())
+                    .toList();
+
+            try {
+                DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        .delete(Delete.builder()
+                                .objects(objects)
+                                .quiet(true)
+                                .build())
+                        .build());
+
+                for (S3Error error : response.errors()) {
+                    log.warn("Failed to delete {} from R2: {} {}", error.key(), error.code(), error.message());
+                    failed.add(error.key());
+                }
+            } catch (Exception e) {
+                log.error("Batch delete of {} objects from R2 failed: {}", batch.size(), e.getMessage());
+                failed.addAll(batch);
+            }
+        }
+
+        keys.stream()
+                .filter(key -> !failed.contains(key))
+                .forEach(urlCache::invalidate);
+
+        return failed;
+    }
+
     @Override
     public String generateTemporaryUrl(String storageKey) {
+        return urlCache.get(storageKey, () -> presign(storageKey));
+    }
+
+    private String presign(String storageKey) {
         try {
 
+            // applies to objects stored before Cache-Control was set on upload, and to promoted ones
             GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                     .bucket(bucketName)
                     .key(storageKey)
+                    .responseCacheControl(ImmutableContent.PUBLIC.getHeaderValue())
                     .build();
 
             GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
@@ -94,11 +415,276 @@ public class R2StorageService implements StorageService {
         }
     }
 
-    private String generateFileName(String originalFileName, UUID storageKey) {
+    @Override
+    public PresignedUploadDTO presignUpload(String storageKey, long size, String contentType, String contentHash) {
+        try {
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(storageKey)
+                    .contentType(contentType)
+                    .contentLength(size)
+                    .checksumSHA256(Base64.getEncoder().encodeToString(HexFormat.of().parseHex(contentHash)))
+                    .build();
+
+            PutObjectPresignRequest presignRequest = PutObjectPresignRequest.builder()
+                    .signatureDuration(Duration.ofMinutes(uploadUrlExpirationMinutes))
+                    .putObjectRequest(putObjectRequest)
+                    .build();
+
+            PresignedPutObjectRequest presignedRequest = s3Presigner.presignPutObject(presignRequest);
+
+            Map<String, String> headers = new LinkedHashMap<>();
+            presignedRequest.signedHeaders().forEach((header, values) -> {
+                // browsers set Host themselves
+                if (!"host".equalsIgnoreCase(header)) {
+                    headers.put(header, String.join(",", values));
+                }
+            });
+
+            return new PresignedUploadDTO(
+                    presignedRequest.url().toString(),
+                    headers,
+                    presignedRequest.expiration());
+
+        } catch (Exception e) {
+            throw new RuntimeException("Error generating upload URL from R2", e);
+        }
+    }
+
+    @Override
+    public Optional<StoredObjectDTO> head(String storageKey) {
+        try {
+            HeadObjectResponse response = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(storageKey)
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build());
+
+            String checksum = response.checksumSHA256() == null
+                    ? null
+                    : HexFormat.of().formatHex(Base64.getDecoder().decode(response.checksumSHA256()));
+
+            return Optional.of(new StoredObjectDTO(response.contentLength(), response.contentType(), checksum));
+
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (Exception e) {
+            throw new RuntimeException("Error reading object metadata from R2", e);
+        }
+    }
+
+    @Override
+    public List<StoredObjectSummaryDTO> list(String startAfter, int limit) {
+        try {
+            ListObjectsV2Response response = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucketName)
+                    .startAfter(startAfter)
+                    .maxKeys(Math.min(limit, MAX_LIST_PAGE))
+                    .build());
+
+            return response.contents().stream()
+                    .map(object -> new StoredObjectSummaryDTO(object.key(), object.size(), object.lastModified()))
+                    .toList();
+
+        } catch (Exception e) {
+            throw new RuntimeException("Error listing objects in R2", e);
+        }
+    }
+
+    @Override
+    public String promote(String stagingKey, String name) {
+        String fileName = generateFileName(stagingKey, name);
+
+        try {
+            s3Client.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucketName)
+                    .sourceKey(stagingKey)
+                    .destinationBucket(bucketName)
+                    .destinationKey(fileName)
+                    .build());
+
+        } catch (Exception e) {
+            throw new RuntimeException("Error copying object in Cloudflare R2", e);
+        }
+
+        return fileName;
+    }
+
+    @Override
+    public void serve(FileDownloadDTO file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!proxyDownloads) {
+            // R2 answers Range and conditional requests itself
+            response.sendRedirect(generateTemporaryUrl(file.objectKey()));
+            return;
+        }
+        proxy(file, request, response);
+    }
+
+    /*
+     * Streams the object through this server for clients that cannot reach R2.
+     * The ETag comes from the key like every other download, so If-None-Match
+     * and If-Range are answered here; Range and If-Modified-Since are passed
+     * on to R2. Each download costs one fixed buffer and one pooled connection.
+     */
+    private void proxy(FileDownloadDTO file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String eTag = FileRangeResponder.eTagFor(file.objectKey());
+
+        // set first so a 304 carries it too
+        response.setHeader(HttpHeaders.CACHE_CONTROL, ImmutableContent.PRIVATE.getHeaderValue());
+
+        if (new ServletWebRequest(request, response).checkNotModified(eTag)) {
+            return;
+        }
+
+        GetObjectRequest.Builder getObject = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(file.objectKey());
+
+        // sending the whole object is always a valid answer to a stale If-Range
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(eTag))) {
+            getObject.range(range);
+        }
+        long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != -1 && request.getHeader(HttpHeaders.IF_NONE_MATCH) == null) {
+            getObject.ifModifiedSince(Instant.ofEpochMilli(ifModifiedSince));
+        }
+
+        ResponseInputStream<GetObjectResponse> object;
+        try {
+            object = s3Client.getObject(getObject.build());
+        } catch (NoSuchKeyException e) {
+            throw new NotFoundException("File content not found");
+        } catch (S3Exception e) {
+            if (e.statusCode() == HttpStatus.NOT_MODIFIED.value()
+                    || e.statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                response.setStatus(e.statusCode());
+                return;
+            }
+            throw new RuntimeException("Error reading file from R2", e);
+        }
+
+        GetObjectResponse metadata = object.response();
+        response.setStatus(metadata.contentRange() != null
+                ? HttpStatus.PARTIAL_CONTENT.value()
+                : HttpStatus.OK.value());
+        response.setContentType(file.contentType());
+        response.setContentLengthLong(metadata.contentLength());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (metadata.contentRange() != null) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, metadata.contentRange());
+        }
+        if (metadata.lastModified() != null) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, metadata.lastModified().toEpochMilli());
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                .filename(file.name(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+
+        boolean complete = false;
+        try (object) {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[PROXY_BUFFER_SIZE];
+            int read;
+            while ((read = object.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                // closing would first drain the rest of the object to reuse the connection
+                object.abort();
+            }
+        }
+    }
+
+    private InputStream openStream(MultipartFile file) {
+        try {
+            return file.getInputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private InputStream openSlice(MultipartFile file, long offset, long length) {
+        InputStream in = openStream(file);
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new UncheckedIOException(e);
+        }
+        return new SliceInputStream(in, length);
+    }
+
+    private void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private String generateFileName(String originalFileName, String name) {
         String extension = "";
         if (originalFileName != null && originalFileName.contains(".")) {
             extension = originalFileName.substring(originalFileName.lastIndexOf("."));
         }
-        return storageKey + extension;
+        return name + extension;
+    }
+
+    private static final class SliceInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        SliceInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
     }
 }
@@ -0,0 +1,188 @@
+package com.nergal.docseq.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.util.DisconnectedClientHelper;
+
+import com.nergal.docseq.dto.files.FileDownloadDTO;
+import com.nergal.docseq.dto.storage.PresignedUploadDTO;
+import com.nergal.docseq.dto.storage.StoredObjectDTO;
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+import com.nergal.docseq.exception.StorageUnavailableException;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/*
+ * Guards calls to a remote backend. A circuit breaker fails fast while the
+ * backend keeps erroring or timing out, and a bulkhead caps concurrent calls
+ * so a slow backend cannot tie up every request thread. Presigning is local
+ * work and goes straight through. Rejected calls surface as 503.
+ */
+@Slf4j
+public class ResilientStorageService implements StorageService {
+
+    private final StorageService delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public ResilientStorageService(
+            StorageService delegate,
+            String backend,
+            CircuitBreakerConfig circuitBreakerConfig,
+            BulkheadConfig bulkheadConfig,
+            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.circuitBreaker = CircuitBreaker.of(backend, CircuitBreakerConfig.from(circuitBreakerConfig)
+                .recordException(ResilientStorageService::isOutage)
+                .build());
+        this.bulkhead = Bulkhead.of(backend, bulkheadConfig);
+
+        circuitBreaker.getEventPublisher().onStateTransition(event -> log.warn("Storage circuit breaker for {}: {}",
+                backend, event.getStateTransition()));
+
+        Gauge.builder("storage.circuit.open", circuitBreaker,
+                        breaker -> breaker.getState() == CircuitBreaker.State.OPEN ? 1 : 0)
+                .tag("backend", backend)
+                .register(meterRegistry);
+        Gauge.builder("storage.bulkhead.available", bulkhead,
+                        b -> b.getMetrics().getAvailableConcurrentCalls())
+                .tag("backend", backend)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String upload(MultipartFile file, String name) {
+        return guard(() -> delegate.upload(file, name));
+    }
+
+    @Override
+    public void put(String storageKey, byte[] content, String contentType) {
+        guard(() -> {
+            delegate.put(storageKey, content, contentType);
+            return null;
+        });
+    }
+
+    @Override
+    public InputStream open(String storageKey) {
+        return guard(() -> delegate.open(storageKey));
+    }
+
+    @Override
+    public void delete(String storageKey) {
+        guard(() -> {
+            delegate.delete(storageKey);
+            return null;
+        });
+    }
+
+    @Override
+    public Set<String> deleteAll(Collection<String> storageKeys) {
+        return guard(() -> delegate.deleteAll(storageKeys));
+    }
+
+    @Override
+    public String generateTemporaryUrl(String storageKey) {
+        return delegate.generateTemporaryUrl(storageKey);
+    }
+
+    @Override
+    public PresignedUploadDTO presignUpload(String storageKey, long size, String contentType, String contentHash) {
+        return delegate.presignUpload(storageKey, size, contentType, contentHash);
+    }
+
+    @Override
+    public Optional<StoredObjectDTO> head(String storageKey) {
+        return guard(() -> delegate.head(storageKey));
+    }
+
+    @Override
+    public List<StoredObjectSummaryDTO> list(String startAfter, int limit) {
+        return guard(() -> delegate.list(startAfter, limit));
+    }
+
+    @Override
+    public String promote(String stagingKey, String name) {
+        return guard(() -> delegate.promote(stagingKey, name));
+    }
+
+    // Downloads can stream for minutes, so they pass the circuit breaker but not the bulkhead
+    @Override
+    public void serve(FileDownloadDTO file, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        try {
+            breaker(() -> {
+                try {
+                    delegate.serve(file, request, response);
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /* ========================= */
+    /* Helpers */
+    /* ========================= */
+
+    private <T> T breaker(Supplier<T> call) {
+        try {
+            return CircuitBreaker.decorateSupplier(circuitBreaker, call).get();
+        } catch (CallNotPermittedException e) {
+            throw new StorageUnavailableException("Storage is temporarily unavailable", e);
+        }
+    }
+
+    // The breaker is checked before a bulkhead slot is taken, so an open circuit never queues
+    private <T> T guard(Supplier<T> call) {
+        try {
+            return CircuitBreaker.decorateSupplier(circuitBreaker, Bulkhead.decorateSupplier(bulkhead, call)).get();
+        } catch (CallNotPermittedException e) {
+            throw new StorageUnavailableException("Storage is temporarily unavailable", e);
+        } catch (BulkheadFullException e) {
+            throw new StorageUnavailableException("Storage is busy, try again shortly", e);
+        }
+    }
+
+    // Only backend trouble opens the circuit; a missing key, a bad request or a client hanging up does not
+    static boolean isOutage(Throwable error) {
+        if (DisconnectedClientHelper.isClientDisconnectedException(error)) {
+            return false;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BulkheadFullException) {
+                return false;
+            }
+            if (cause instanceof AwsServiceException service) {
+                return service.statusCode() >= 500 || service.statusCode() == 429;
+            }
+            if (cause instanceof SdkClientException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package com.nergal.docseq.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nergal.docseq.entities.StorageDeletion;
+import com.nergal.docseq.repositories.BlobRepository;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+// Drains tb_storage_deletions in batches sized for S3 DeleteObjects
+@Slf4j
+@Service
+public class StorageDeletionWorker {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(30);
+
+    private final StorageDeletionRepository storageDeletionRepository;
+    private final FileRepository fileRepository;
+    private final BlobRepository blobRepository;
+    private final StorageService storageService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter deleted;
+    private final Counter skipped;
+    private final Counter failed;
+    private final Timer batchTimer;
+
+    @Value("${storage.deletions.max-backoff:1h}")
+    private Duration maxBackoff;
+
+    public StorageDeletionWorker(
+            StorageDeletionRepository storageDeletionRepository,
+            FileRepository fileRepository,
+            BlobRepository blobRepository,
+            StorageService storageService,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry) {
+        this.storageDeletionRepository = storageDeletionRepository;
+        this.fileRepository = fileRepository;
+        this.blobRepository = blobRepository;
+        this.storageService = storageService;
+        this.transactionTemplate = transactionTemplate;
+
+        this.deleted = Counter.builder("storage.deletions").tag("result", "deleted").register(meterRegistry);
+        this.skipped = Counter.builder("storage.deletions").tag("result", "skipped").register(meterRegistry);
+        this.failed = Counter.builder("storage.deletions").tag("result", "failed").register(meterRegistry);
+        this.batchTimer = Timer.builder("storage.deletions.batch").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.deletions.poll-interval-ms:5000}")
+    public void drain() {
+        int claimed;
+        do {
+            claimed = transactionTemplate.execute(status -> batchTimer.record(this::drainBatch));
+        } while (claimed == BATCH_SIZE);
+    }
+
+    // Claimed rows stay locked until the batch commits, so no two workers delete the same key
+    private int drainBatch() {
+        List<StorageDeletion> batch = storageDeletionRepository.claim(Instant.now(), BATCH_SIZE);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> keys = batch.stream()
+                .map(StorageDeletion::getObjectKey)
+                .collect(Collectors.toSet());
+
+        // a key can be referenced again if the same content was uploaded after it was queued, and
+        // reconciliation may queue a thumbnail or blob object that is still in use
+        Set<String> referenced = new HashSet<>(fileRepository.findReferencedKeys(keys));
+        referenced.addAll(blobRepository.findReferencedKeys(keys));
+        keys.removeAll(referenced);
+
+        Set<String> failedKeys;
+        String error = null;
+        try {
+            failedKeys = keys.isEmpty() ? Set.of() : storageService.deleteAll(keys);
+        } catch (Exception e) {
+            failedKeys = keys;
+            error = e.getMessage();
+            log.error("Batch storage deletion failed: {}", error);
+        }
+
+        Instant now = Instant.now();
+        List<StorageDeletion> done = new ArrayList<>(batch.size());
+        for (StorageDeletion deletion : batch) {
+            String key = deletion.getObjectKey();
+            if (failedKeys.contains(key)) {
+                deletion.scheduleRetry(now.plus(backoff(deletion.getAttempts())), error);
+                failed.increment();
+                continue;
+            }
+            if (referenced.contains(key)) {
+                skipped.increment();
+            } else {
+                deleted.increment();
+            }
+            done.add(deletion);
+        }
+        storageDeletionRepository.deleteAllInBatch(done);
+
+        return batch.size();
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = INITIAL_BACKOFF.multipliedBy(1L << Math.min(attempts, 16));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+}
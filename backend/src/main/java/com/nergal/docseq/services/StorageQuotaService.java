@@ -0,0 +1,173 @@
+package com.nergal.docseq.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.nergal.docseq.entities.TownUsage;
+import com.nergal.docseq.exception.QuotaExceededException;
+import com.nergal.docseq.repositories.TownUsageRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Per-town byte counters. Uploads reserve their size in a short transaction
+ * committed before their own one starts, so the counter row is never locked
+ * for the length of an upload and no request holds two connections. Reserved
+ * bytes are also counted in reserved_bytes until the transaction inserting
+ * their File rows settles them; if the upload fails instead they are given
+ * back. Deletions release inside the deleting transaction. A periodic
+ * reconciliation recomputes every total as its files plus what is still
+ * reserved, to correct drift left by crashes.
+ */
+@Slf4j
+@Service
+public class StorageQuotaService {
+
+    private static final int RECONCILE_BATCH_SIZE = 100;
+    private static final UUID FIRST_TOWN = new UUID(0, 0);
+
+    private final TownUsageRepository townUsageRepository;
+    private final TransactionTemplate ownTransaction;
+    private final TransactionTemplate uploadTransaction;
+
+    @Value("${storage.quota.default:50GB}")
+    private DataSize defaultQuota;
+
+    // longer than any town with a reservation in flight goes without counter activity
+    @Value("${storage.quota.reconcile-grace:1h}")
+    private Duration reconcileGrace;
+
+    public StorageQuotaService(TownUsageRepository townUsageRepository, PlatformTransactionManager transactionManager) {
+        this.townUsageRepository = townUsageRepository;
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        // counter updates commit on their own; nesting them would hold a second connection
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NEVER);
+        this.uploadTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /*
+     * Reserves the bytes, then runs the upload in a transaction that settles
+     * them as it commits, so the File rows and the counter change together.
+     * The bytes are given back if the upload throws. Must be called outside a
+     * transaction.
+     */
+    public <T> T withReservation(UUID townId, long bytes, Supplier<T> upload) {
+        return withHeldReservation(townId, bytes, () -> uploadTransaction.execute(status -> {
+            T result = upload.get();
+            // last, so the counter row stays locked only for the commit
+            townUsageRepository.settle(townId, bytes);
+            return result;
+        }));
+    }
+
+    /*
+     * Like withReservation, but the bytes stay reserved once the upload
+     * returns: the caller settles them in the transaction that inserts the
+     * File rows, or gives them back.
+     */
+    public <T> T withHeldReservation(UUID townId, long bytes, Supplier<T> upload) {
+        reserve(townId, bytes);
+
+        try {
+            return upload.get();
+        } catch (RuntimeException | Error e) {
+            giveBack(townId, bytes);
+            throw e;
+        }
+    }
+
+    private void reserve(UUID townId, long bytes) {
+        int updated = ownTransaction.execute(status -> {
+            townUsageRepository.createIfMissing(townId);
+            return townUsageRepository.reserve(townId, bytes, defaultQuota.toBytes());
+        });
+
+        if (updated == 0) {
+            throw new QuotaExceededException("Storage quota exceeded");
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void settle(UUID townId, long bytes) {
+        if (bytes > 0) {
+            townUsageRepository.settle(townId, bytes);
+        }
+    }
+
+    // Compensates a reservation whose bytes ended up not being kept
+    public void giveBack(UUID townId, long bytes) {
+        try {
+            ownTransaction.executeWithoutResult(status -> townUsageRepository.cancel(townId, bytes));
+        } catch (RuntimeException e) {
+            // reconciliation will correct the counter
+            log.warn("Failed to release {} bytes for town {}", bytes, townId, e);
+        }
+    }
+
+    // Fails early without reserving, for flows that write long before they commit
+    @Transactional(readOnly = true)
+    public void check(UUID townId, long bytes) {
+        TownUsage usage = townUsageRepository.findById(townId).orElse(null);
+        long used = usage != null ? usage.getUsedBytes() : 0;
+
+        if (used + bytes > quotaOf(usage)) {
+            throw new QuotaExceededException("Storage quota exceeded");
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(UUID townId, long bytes) {
+        if (bytes > 0) {
+            townUsageRepository.release(townId, bytes);
+        }
+    }
+
+    public long quotaOf(TownUsage usage) {
+        return usage != null && usage.getQuotaBytes() != null
+                ? usage.getQuotaBytes()
+                : defaultQuota.toBytes();
+    }
+
+    @Scheduled(
+            fixedDelayString = "${storage.quota.reconcile-interval-ms:21600000}",
+            initialDelayString = "${storage.quota.reconcile-initial-delay-ms:120000}")
+    public void reconcile() {
+        ownTransaction.executeWithoutResult(status -> townUsageRepository.createMissing());
+
+        Instant idleSince = Instant.now().minus(reconcileGrace);
+        UUID after = FIRST_TOWN;
+        int towns = 0;
+        List<UUID> batch;
+        do {
+            UUID from = after;
+            List<UUID> ids = ownTransaction.execute(status -> townUsageRepository
+                    .findTownIdsAfter(from, PageRequest.of(0, RECONCILE_BATCH_SIZE)));
+            if (!ids.isEmpty()) {
+                ownTransaction.executeWithoutResult(status -> {
+                    // lock first: the sum below must not miss an upload settling meanwhile
+                    townUsageRepository.lockAll(ids);
+                    townUsageRepository.reconcile(ids, idleSince);
+                });
+                after = ids.get(ids.size() - 1);
+                towns += ids.size();
+            }
+            batch = ids;
+        } while (batch.size() == RECONCILE_BATCH_SIZE);
+
+        log.info("Reconciled storage usage for {} towns", towns);
+    }
+}
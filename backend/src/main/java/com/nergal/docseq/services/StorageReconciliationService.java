@@ -0,0 +1,280 @@
+package com.nergal.docseq.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+import com.nergal.docseq.entities.StorageDeletion;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Finds objects no file points to and files whose object is gone. The bucket
+ * listing and the keys in tb_files are both read in ascending byte order, one
+ * page at a time, and merge-joined, so memory stays at a page per stream.
+ *
+ * Orphaned objects are queued in tb_storage_deletions (never deleted here), and
+ * only once older than the grace period, which covers uploads whose row has not
+ * committed yet. Missing objects are only reported: rows are never removed.
+ * An interrupted sweep stops where it is and queues nothing more, since the
+ * rest of either stream would otherwise look orphaned or missing.
+ */
+@Slf4j
+@Service
+public class StorageReconciliationService {
+
+    private static final int MAX_LOGGED = 100;
+    private static final String STAGING_PREFIX = "staging/";
+
+    private final StorageService storageService;
+    private final FileRepository fileRepository;
+    private final StorageDeletionRepository storageDeletionRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter orphanedObjects;
+    private final Counter missingObjects;
+    private final Counter queuedDeletions;
+
+    @Value("${storage.reconcile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.reconcile.dry-run:true}")
+    private boolean dryRun;
+
+    @Value("${storage.reconcile.grace:24h}")
+    private Duration grace;
+
+    @Value("${storage.reconcile.max-deletions:10000}")
+    private int maxDeletions;
+
+    @Value("${storage.reconcile.page-size:1000}")
+    private int pageSize;
+
+    // pause between listing pages, keeps the sweep from competing with user traffic
+    @Value("${storage.reconcile.page-delay:200ms}")
+    private Duration pageDelay;
+
+    public StorageReconciliationService(
+            StorageService storageService,
+            FileRepository fileRepository,
+            StorageDeletionRepository storageDeletionRepository,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry) {
+        this.storageService = storageService;
+        this.fileRepository = fileRepository;
+        this.storageDeletionRepository = storageDeletionRepository;
+        this.transactionTemplate = transactionTemplate;
+
+        this.orphanedObjects = Counter.builder("storage.reconcile.orphans").tag("kind", "object").register(meterRegistry);
+        this.missingObjects = Counter.builder("storage.reconcile.orphans").tag("kind", "row").register(meterRegistry);
+        this.queuedDeletions = Counter.builder("storage.reconcile.deletions").register(meterRegistry);
+    }
+
+    @Scheduled(
+            fixedDelayString = "${storage.reconcile.interval-ms:86400000}",
+            initialDelayString = "${storage.reconcile.initial-delay-ms:600000}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+
+        Result result;
+        try {
+            result = run(Instant.now().minus(grace));
+        } catch (CancellationException e) {
+            log.info("Storage reconciliation interrupted; nothing more was queued");
+            return;
+        }
+        log.info("Storage reconciliation{}: {} objects scanned, {} orphaned objects ({} queued for deletion), "
+                + "{} files missing their object",
+                dryRun ? " (dry run)" : "",
+                result.scanned, result.orphaned, result.queued, result.missing);
+    }
+
+    private Result run(Instant olderThan) {
+        Result result = new Result();
+
+        KeyStream objects = new KeyStream(after -> {
+            List<String> keys = new ArrayList<>();
+            for (StoredObjectSummaryDTO object : storageService.list(after, pageSize)) {
+                keys.add(object.key());
+                result.lastModified.put(object.key(), object.lastModified());
+            }
+            return keys;
+        });
+        KeyStream rows = new KeyStream(after -> merge(
+                fileRepository.findObjectKeysAfter(after == null ? "" : after, pageSize),
+                fileRepository.findThumbnailKeysAfter(after == null ? "" : after, pageSize),
+                pageSize));
+
+        List<String> candidates = new ArrayList<>();
+
+        while (objects.peek() != null || rows.peek() != null) {
+            String object = objects.peek();
+            String row = rows.peek();
+            int order = object == null ? 1 : row == null ? -1 : object.compareTo(row);
+
+            if (order <= 0) {
+                objects.next();
+                result.scanned++;
+                Instant modified = result.lastModified.remove(object);
+
+                if (order < 0 && !object.startsWith(STAGING_PREFIX) && modified.isBefore(olderThan)) {
+                    candidates.add(object);
+                    if (candidates.size() == pageSize) {
+                        handleOrphans(candidates, result);
+                    }
+                }
+            }
+
+            if (order >= 0) {
+                rows.next();
+                if (order > 0) {
+                    result.missing++;
+                    missingObjects.increment();
+                    if (result.missing <= MAX_LOGGED) {
+                        log.warn("File row points to a missing object: {}", row);
+                    }
+                }
+            }
+        }
+
+        handleOrphans(candidates, result);
+        return result;
+    }
+
+    private void handleOrphans(List<String> candidates, Result result) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        // already on their way out
+        Set<String> pending = new HashSet<>(storageDeletionRepository.findPendingObjectKeys(candidates));
+
+        List<StorageDeletion> deletions = new ArrayList<>();
+        for (String key : candidates) {
+            if (pending.contains(key)) {
+                continue;
+            }
+            result.orphaned++;
+            orphanedObjects.increment();
+            if (result.orphaned <= MAX_LOGGED) {
+                log.warn("Object has no file row: {}", key);
+            }
+            if (!dryRun && result.queued < maxDeletions) {
+                deletions.add(new StorageDeletion(key, null));
+                result.queued++;
+            }
+        }
+
+        if (!deletions.isEmpty()) {
+            // the deletion worker re-checks references before deleting anything
+            transactionTemplate.executeWithoutResult(status -> storageDeletionRepository.saveAll(deletions));
+            queuedDeletions.increment(deletions.size());
+        }
+        candidates.clear();
+    }
+
+    // Both lists ascending; the result stops at the first key either list may not be complete past
+    static List<String> merge(List<String> a, List<String> b, int pageSize) {
+        List<String> merged = new ArrayList<>(a.size() + b.size());
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            String next;
+            if (j >= b.size() || (i < a.size() && a.get(i).compareTo(b.get(j)) <= 0)) {
+                next = a.get(i++);
+            } else {
+                next = b.get(j++);
+            }
+            if (merged.isEmpty() || !merged.get(merged.size() - 1).equals(next)) {
+                merged.add(next);
+            }
+        }
+        // each list is complete only up to its own last key
+        String limit = a.size() == pageSize && b.size() == pageSize
+                ? min(a.get(a.size() - 1), b.get(b.size() - 1))
+                : a.size() == pageSize ? a.get(a.size() - 1)
+                : b.size() == pageSize ? b.get(b.size() - 1)
+                : null;
+        if (limit != null) {
+            merged.removeIf(key -> key.compareTo(limit) > 0);
+        }
+        return merged;
+    }
+
+    private static String min(String a, String b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static final class Result {
+        private final Map<String, Instant> lastModified = new HashMap<>();
+        private long scanned;
+        private long orphaned;
+        private long queued;
+        private long missing;
+    }
+
+    // Ascending keys fetched a page at a time; an empty page marks the end
+    private final class KeyStream {
+
+        private final Function<String, List<String>> fetch;
+        private final ArrayDeque<String> page = new ArrayDeque<>();
+        private String last;
+        private boolean exhausted;
+
+        KeyStream(Function<String, List<String>> fetch) {
+            this.fetch = fetch;
+        }
+
+        String peek() {
+            if (page.isEmpty() && !exhausted) {
+                fill();
+            }
+            return page.peek();
+        }
+
+        String next() {
+            String key = peek();
+            page.poll();
+            return key;
+        }
+
+        private void fill() {
+            if (last != null && !pageDelay.isZero()) {
+                try {
+                    Thread.sleep(pageDelay);
+                } catch (InterruptedException e) {
+                    // ending the stream here would make the rest of the other one look orphaned
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Storage reconciliation interrupted");
+                }
+            }
+            List<String> keys = fetch.apply(last);
+            if (keys.isEmpty()) {
+                exhausted = true;
+                return;
+            }
+            page.addAll(keys);
+            last = keys.get(keys.size() - 1);
+        }
+    }
+}
@@ -1,14 +1,49 @@
 package com.nergal.docseq.services;
 
-import java.util.UUID;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import com.nergal.docseq.dto.files.FileDownloadDTO;
+import com.nergal.docseq.dto.storage.PresignedUploadDTO;
+import com.nergal.docseq.dto.storage.StoredObjectDTO;
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
 public interface StorageService {
 
-    String upload(MultipartFile file, UUID fileId);
+    String upload(MultipartFile file, String name);
+
+    // Writes a small derived object (e.g. a thumbnail) under an exact key
+    void put(String storageKey, byte[] content, String contentType);
+
+    // Caller closes the stream
+    InputStream open(String storageKey);
 
     void delete(String storageKey);
 
+    // Returns the keys that could not be deleted
+    Set<String> deleteAll(Collection<String> storageKeys);
+
     String generateTemporaryUrl(String storageKey);
+
+    // URL the browser can PUT the bytes to; the backend rejects content not matching the hash
+    PresignedUploadDTO presignUpload(String storageKey, long size, String contentType, String contentHash);
+
+    Optional<StoredObjectDTO> head(String storageKey);
+
+    // Up to limit objects with keys after startAfter (null for the first page), in ascending key order
+    List<StoredObjectSummaryDTO> list(String startAfter, int limit);
+
+    // Copies a staged object to the key upload(file, name) would have written
+    String promote(String stagingKey, String name);
+
+    void serve(FileDownloadDTO file, HttpServletRequest request, HttpServletResponse response) throws IOException;
 }
@@ -0,0 +1,122 @@
+package com.nergal.docseq.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nergal.docseq.entities.Blob;
+import com.nergal.docseq.entities.BlobContent;
+import com.nergal.docseq.events.BlobStoredEvent;
+import com.nergal.docseq.helpers.concurrent.BoundedTaskQueue;
+import com.nergal.docseq.helpers.pdf.SpooledPdf;
+import com.nergal.docseq.repositories.BlobContentRepository;
+import com.nergal.docseq.repositories.BlobRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Extracts the text of each stored blob for full-text search. Indexing is
+ * incremental: new content is queued after its upload commits and a periodic
+ * catch-up covers anything dropped or stored before indexing existed.
+ */
+@Slf4j
+@Service
+public class TextIndexService {
+
+    private final StorageService storageService;
+    private final BlobRepository blobRepository;
+    private final BlobContentRepository blobContentRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // keeps the extracted text well below the 1MB tsvector limit
+    @Value("${search.max-chars:500000}")
+    private int maxChars;
+
+    @Value("${search.max-pages:300}")
+    private int maxPages;
+
+    @Value("${search.threads:1}")
+    private int threads;
+
+    @Value("${search.queue-capacity:100}")
+    private int queueCapacity;
+
+    private BoundedTaskQueue queue;
+
+    public TextIndexService(
+            StorageService storageService,
+            BlobRepository blobRepository,
+            BlobContentRepository blobContentRepository,
+            TransactionTemplate transactionTemplate) {
+        this.storageService = storageService;
+        this.blobRepository = blobRepository;
+        this.blobContentRepository = blobContentRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    void init() {
+        queue = new BoundedTaskQueue("text-index", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        queue.shutdown();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onBlobStored(BlobStoredEvent event) {
+        submit(event.contentHash(), event.objectKey());
+    }
+
+    @Scheduled(fixedDelayString = "${search.catch-up-interval-ms:600000}", initialDelay = 90_000)
+    public void catchUp() {
+        int room = queue.remainingCapacity();
+        if (room == 0) {
+            return;
+        }
+        for (Blob blob : blobRepository.findPendingTextIndex(PageRequest.of(0, room))) {
+            submit(blob.getContentHash(), blob.getObjectKey());
+        }
+    }
+
+    private void submit(String contentHash, String objectKey) {
+        queue.submit(contentHash, () -> index(contentHash, objectKey));
+    }
+
+    private void index(String contentHash, String objectKey) throws IOException {
+        String text;
+        try (InputStream in = storageService.open(objectKey)) {
+            text = SpooledPdf.read(in, this::extractText);
+        } catch (SpooledPdf.UnreadablePdfException e) {
+            // stored as empty so unreadable PDFs are not retried forever;
+            // storage errors propagate and leave the blob for the catch-up job
+            log.warn("Could not extract text from {}: {}", objectKey, e.getMessage());
+            text = "";
+        }
+
+        String contentText = text;
+        transactionTemplate.executeWithoutResult(status -> blobRepository.findById(contentHash)
+                .ifPresent(blob -> blobContentRepository.save(new BlobContent(blob, contentText))));
+    }
+
+    private String extractText(PDDocument document) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setEndPage(maxPages);
+
+        // Postgres text cannot hold NUL
+        String text = stripper.getText(document).replace('\u0000', ' ');
+        return text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+}
@@ -0,0 +1,143 @@
+package com.nergal.docseq.services;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+
+import javax.imageio.ImageIO;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import com.nergal.docseq.entities.Blob;
+import com.nergal.docseq.events.BlobStoredEvent;
+import com.nergal.docseq.helpers.concurrent.BoundedTaskQueue;
+import com.nergal.docseq.helpers.pdf.SpooledPdf;
+import com.nergal.docseq.repositories.BlobRepository;
+import com.nergal.docseq.repositories.FileRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Renders a first-page PNG for each stored blob off the request path.
+ * Work that does not fit the bounded queue is picked up later by the
+ * catch-up job, so uploads never wait.
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    private static final String CONTENT_TYPE = "image/png";
+    private static final String SUFFIX = ".thumb.png";
+
+    private final StorageService storageService;
+    private final BlobRepository blobRepository;
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${previews.width:256}")
+    private int width;
+
+    @Value("${previews.threads:2}")
+    private int threads;
+
+    @Value("${previews.queue-capacity:100}")
+    private int queueCapacity;
+
+    private BoundedTaskQueue queue;
+
+    public ThumbnailService(
+            StorageService storageService,
+            BlobRepository blobRepository,
+            FileRepository fileRepository,
+            TransactionTemplate transactionTemplate) {
+        this.storageService = storageService;
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    void init() {
+        queue = new BoundedTaskQueue("thumbnail", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        queue.shutdown();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onBlobStored(BlobStoredEvent event) {
+        submit(event.contentHash(), event.objectKey());
+    }
+
+    // Blobs missed because the queue was full, the app restarted, or they predate previews
+    @Scheduled(fixedDelayString = "${previews.catch-up-interval-ms:600000}", initialDelay = 60_000)
+    public void catchUp() {
+        int room = queue.remainingCapacity();
+        if (room == 0) {
+            return;
+        }
+        for (Blob blob : blobRepository.findPendingThumbnails(PageRequest.of(0, room))) {
+            submit(blob.getContentHash(), blob.getObjectKey());
+        }
+    }
+
+    private void submit(String contentHash, String objectKey) {
+        queue.submit(contentHash, () -> generate(contentHash, objectKey));
+    }
+
+    private void generate(String contentHash, String objectKey) throws IOException {
+        String thumbnailKey = null;
+        try (InputStream in = storageService.open(objectKey)) {
+            byte[] png = SpooledPdf.read(in, this::renderFirstPage);
+            thumbnailKey = StringUtils.stripFilenameExtension(objectKey) + SUFFIX;
+            storageService.put(thumbnailKey, png, CONTENT_TYPE);
+        } catch (SpooledPdf.UnreadablePdfException e) {
+            // unreadable PDFs are marked as checked so they are not retried forever;
+            // storage errors propagate and leave the blob for the catch-up job
+            log.warn("Could not render a thumbnail for {}: {}", objectKey, e.getMessage());
+        }
+
+        String storedKey = thumbnailKey;
+        transactionTemplate.executeWithoutResult(status -> {
+            blobRepository.markThumbnail(contentHash, storedKey, Instant.now());
+            if (storedKey != null) {
+                fileRepository.updateThumbnailKey(contentHash, storedKey);
+            }
+        });
+    }
+
+    private byte[] renderFirstPage(PDDocument document) throws IOException {
+        if (document.getNumberOfPages() == 0) {
+            throw new IOException("Document has no pages");
+        }
+
+        // fit the width, and never render taller than twice the width
+        PDRectangle box = document.getPage(0).getCropBox();
+        float scale = Math.min(
+                width / Math.max(box.getWidth(), 1f),
+                2f * width / Math.max(box.getHeight(), 1f));
+
+        BufferedImage image = new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -8,20 +8,31 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.nergal.docseq.dto.towns.TownContentResponse;
 import com.nergal.docseq.dto.towns.TownItemDTO;
+import com.nergal.docseq.dto.towns.TownQuotaDTO;
 import com.nergal.docseq.dto.towns.TownRequestDTO;
 import com.nergal.docseq.dto.towns.TownUpdateDTO;
+import com.nergal.docseq.dto.towns.TownUsageDTO;
 import com.nergal.docseq.entities.Town;
+import com.nergal.docseq.entities.TownUsage;
 import com.nergal.docseq.exception.NotFoundException;
 import com.nergal.docseq.helpers.mappers.PageMapper;
 import com.nergal.docseq.repositories.TownRepository;
+import com.nergal.docseq.repositories.TownUsageRepository;
 
 @Service
 public class TownService {
 
     private final TownRepository townRepo;
+    private final TownUsageRepository townUsageRepo;
+    private final StorageQuotaService storageQuotaService;
 
-    public TownService(TownRepository townRepo) {
+    public TownService(
+            TownRepository townRepo,
+            TownUsageRepository townUsageRepo,
+            StorageQuotaService storageQuotaService) {
         this.townRepo = townRepo;
+        this.townUsageRepo = townUsageRepo;
+        this.storageQuotaService = storageQuotaService;
     }
 
     @Transactional(readOnly = true)
@@ -70,6 +81,37 @@ public class TownService {
         townRepo.save(town);
     }
 
+    @Transactional(readOnly = true)
+    public TownUsageDTO getUsage(UUID townId) {
+        if (!townRepo.existsById(townId)) {
+            throw new NotFoundException("Town not found");
+        }
+
+        TownUsage usage = townUsageRepo.findById(townId).orElse(null);
+        return toUsageDTO(townId, usage);
+    }
+
+    @Transactional
+    public TownUsageDTO updateQuota(UUID townId, TownQuotaDTO dto) {
+        Town town = townRepo.findById(townId)
+                .orElseThrow(() -> new NotFoundException("Town not found"));
+
+        TownUsage usage = townUsageRepo.findById(townId)
+                .orElseGet(() -> townUsageRepo.save(new TownUsage(town)));
+        usage.setQuotaBytes(dto.quotaBytes());
+
+        return toUsageDTO(townId, usage);
+    }
+
+    private TownUsageDTO toUsageDTO(UUID townId, TownUsage usage) {
+        return new TownUsageDTO(
+                townId,
+                usage != null ? usage.getUsedBytes() : 0,
+                storageQuotaService.quotaOf(usage),
+                usage != null && usage.getQuotaBytes() != null,
+                usage != null ? usage.getReconciledAt() : null);
+    }
+
     @Transactional
     public void deleteTown(UUID townId) {
         townRepo.findById(townId)
@@ -0,0 +1,63 @@
+package com.nergal.docseq.services;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nergal.docseq.entities.StorageDeletion;
+import com.nergal.docseq.entities.UploadReservation;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+import com.nergal.docseq.repositories.UploadReservationRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Drops direct uploads that were never committed, along with whatever was staged for them
+@Slf4j
+@Service
+public class UploadReservationWorker {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final UploadReservationRepository uploadReservationRepository;
+    private final StorageDeletionRepository storageDeletionRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public UploadReservationWorker(
+            UploadReservationRepository uploadReservationRepository,
+            StorageDeletionRepository storageDeletionRepository,
+            TransactionTemplate transactionTemplate) {
+        this.uploadReservationRepository = uploadReservationRepository;
+        this.storageDeletionRepository = storageDeletionRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.direct-upload.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        int purged;
+        do {
+            purged = transactionTemplate.execute(status -> purgeBatch());
+        } while (purged == BATCH_SIZE);
+    }
+
+    private int purgeBatch() {
+        List<UploadReservation> expired = uploadReservationRepository
+                .findByExpiresAtBefore(Instant.now(), PageRequest.of(0, BATCH_SIZE));
+
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        storageDeletionRepository.saveAll(expired.stream()
+                .filter(reservation -> reservation.getStagingKey() != null)
+                .map(reservation -> new StorageDeletion(reservation.getStagingKey(), null))
+                .toList());
+        uploadReservationRepository.deleteAllInBatch(expired);
+
+        log.info("Purged {} expired upload reservations", expired.size());
+        return expired.size();
+    }
+}
@@ -0,0 +1,375 @@
+package com.nergal.docseq.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.nergal.docseq.dto.files.FileResponseDTO;
+import com.nergal.docseq.dto.files.UploadSessionRequestDTO;
+import com.nergal.docseq.dto.files.UploadSessionResponseDTO;
+import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.UploadSession;
+import com.nergal.docseq.entities.User;
+import com.nergal.docseq.exception.BadRequestException;
+import com.nergal.docseq.exception.ConflictException;
+import com.nergal.docseq.exception.NotFoundException;
+import com.nergal.docseq.exception.UnprocessableContentException;
+import com.nergal.docseq.helpers.ContentHashes;
+import com.nergal.docseq.helpers.PathMultipartFile;
+import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.UploadSessionRepository;
+import com.nergal.docseq.repositories.UserRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Resumable uploads: the client sends numbered chunks in order, each with its
+ * SHA-256, and can ask for the received offset after a dropped connection.
+ * Chunks are staged on local disk, so a session must keep hitting the same instance.
+ */
+@Slf4j
+@Service
+public class UploadSessionService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FolderRepository folderRepository;
+    private final UserRepository userRepository;
+    private final FileService fileService;
+    private final TransactionTemplate transactionTemplate;
+    private final StorageQuotaService storageQuotaService;
+
+    // sessions with a chunk or completion in flight on this instance;
+    // across instances the session's version column decides who wins
+    private final Set<UUID> busy = ConcurrentHashMap.newKeySet();
+
+    @Value("${storage.upload-sessions.directory:${java.io.tmpdir}/docseq-upload-sessions}")
+    private String directory;
+
+    @Value("${storage.upload-sessions.max-size:${storage.direct-upload.max-size:200MB}}")
+    private DataSize maxSize;
+
+    @Value("${storage.upload-sessions.max-chunk-size:16MB}")
+    private DataSize maxChunkSize;
+
+    @Value("${storage.upload-sessions.ttl:24h}")
+    private Duration ttl;
+
+    public UploadSessionService(
+            UploadSessionRepository uploadSessionRepository,
+            FolderRepository folderRepository,
+            UserRepository userRepository,
+            FileService fileService,
+            TransactionTemplate transactionTemplate,
+            StorageQuotaService storageQuotaService) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.folderRepository = folderRepository;
+        this.userRepository = userRepository;
+        this.fileService = fileService;
+        this.transactionTemplate = transactionTemplate;
+        this.storageQuotaService = storageQuotaService;
+    }
+
+    public UploadSessionResponseDTO create(UploadSessionRequestDTO dto, JwtAuthenticationToken token) {
+
+        if (!"application/pdf".equalsIgnoreCase(dto.contentType())) {
+            throw new BadRequestException("Only PDF allowed");
+        }
+
+        if (dto.size() > maxSize.toBytes()) {
+            throw new BadRequestException("File is too large");
+        }
+
+        UploadSession session = transactionTemplate.execute(status -> {
+            User user = getUser(token);
+
+            Folder folder = folderRepository
+                    .findByFolderIdAndTownTownIdAndDeletedAtIsNull(
+                            dto.folderId(),
+                            user.getTown().getTownId())
+                    .orElseThrow(() -> new NotFoundException("Folder not found"));
+
+            // the real reservation happens on completion, through FileService.upload
+            storageQuotaService.check(user.getTown().getTownId(), dto.size());
+
+            UploadSession created = new UploadSession();
+            created.setName(dto.name());
+            created.setSize(dto.size());
+            created.setContentType(dto.contentType());
+            created.setFolder(folder);
+            created.setTown(user.getTown());
+            created.setUploadedBy(user);
+            created.setExpiresAt(Instant.now().plus(ttl));
+            return uploadSessionRepository.save(created);
+        });
+
+        return toResponse(session);
+    }
+
+    public UploadSessionResponseDTO status(UUID sessionId, JwtAuthenticationToken token) {
+        return toResponse(findSession(sessionId, token));
+    }
+
+    /*
+     * Appends chunk n at the received offset. Re-sending a chunk that was already
+     * stored is a no-op, so clients can retry blindly after a timeout.
+     */
+    public UploadSessionResponseDTO appendChunk(
+            UUID sessionId,
+            int chunk,
+            String sha256,
+            InputStream body,
+            JwtAuthenticationToken token) {
+
+        if (sha256 == null || !sha256.matches("^[0-9a-fA-F]{64}$")) {
+            throw new BadRequestException("Chunk SHA-256 is required");
+        }
+
+        findSession(sessionId, token);
+
+        if (!busy.add(sessionId)) {
+            throw new ConflictException("Another request for this upload is in progress");
+        }
+
+        try {
+            // re-read under the guard, the offset may have moved since the ownership check
+            UploadSession session = uploadSessionRepository.findById(sessionId)
+                    .orElseThrow(() -> new NotFoundException("Upload session not found"));
+
+            if (chunk < session.getNextChunk()) {
+                return toResponse(session);
+            }
+
+            if (chunk > session.getNextChunk()) {
+                throw new ConflictException("Expected chunk " + session.getNextChunk());
+            }
+
+            long written = writeChunk(session, sha256.toLowerCase(), body);
+
+            try {
+                return transactionTemplate.execute(status -> {
+                    UploadSession current = uploadSessionRepository.findById(sessionId)
+                            .orElseThrow(() -> new NotFoundException("Upload session not found"));
+
+                    // anything that lands between here and commit fails the version check instead
+                    if (!current.getVersion().equals(session.getVersion())) {
+                        throw new OptimisticLockingFailureException("Upload session " + sessionId + " changed");
+                    }
+
+                    current.chunkReceived(written, Instant.now().plus(ttl));
+                    return toResponse(current);
+                });
+            } catch (OptimisticLockingFailureException e) {
+                truncateStaged(sessionId, session.getReceivedBytes());
+                throw new ConflictException("Another request for this upload is in progress");
+            }
+        } finally {
+            busy.remove(sessionId);
+        }
+    }
+
+    // Runs the assembled file through the regular upload path, so the result is indistinguishable
+    public FileResponseDTO complete(UUID sessionId, JwtAuthenticationToken token) {
+        UploadSession found = findSession(sessionId, token);
+
+        if (!found.getReceivedBytes().equals(found.getSize())) {
+            throw new BadRequestException("Upload is incomplete");
+        }
+
+        if (!busy.add(sessionId)) {
+            throw new ConflictException("Another request for this upload is in progress");
+        }
+
+        try {
+            // the delete below checks the version, so a chunk appended meanwhile rolls this back
+            return storageQuotaService.withReservation(found.getTown().getTownId(), found.getSize(), () -> {
+                UploadSession session = uploadSessionRepository.findById(sessionId)
+                        .orElseThrow(() -> new NotFoundException("Upload session not found"));
+
+                if (!session.getReceivedBytes().equals(session.getSize())) {
+                    throw new BadRequestException("Upload is incomplete");
+                }
+
+                Path staged = stagingPath(sessionId);
+
+                FileResponseDTO response = fileService.createUpload(
+                        new PathMultipartFile(staged, session.getName(), session.getContentType()),
+                        session.getFolder().getFolderId(),
+                        token);
+
+                uploadSessionRepository.delete(session);
+                deleteAfterCommit(staged);
+
+                return response;
+            });
+        } catch (OptimisticLockingFailureException e) {
+            throw new ConflictException("Another request for this upload is in progress");
+        } finally {
+            busy.remove(sessionId);
+        }
+    }
+
+    public void abort(UUID sessionId, JwtAuthenticationToken token) {
+        UploadSession session = findSession(sessionId, token);
+
+        if (!busy.add(sessionId)) {
+            throw new ConflictException("Another request for this upload is in progress");
+        }
+
+        try {
+            uploadSessionRepository.delete(session);
+            deleteStaged(sessionId);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ConflictException("Another request for this upload is in progress");
+        } finally {
+            busy.remove(sessionId);
+        }
+    }
+
+    Path stagingPath(UUID sessionId) {
+        return Paths.get(directory).resolve(sessionId + ".part");
+    }
+
+    // Drops sessions whose target folders are being deleted; staged bytes go once that commits
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteInTree(Folder root) {
+        UUID rootId = root.getFolderId();
+        String pattern = root.getSubtreePath() + "%";
+
+        for (UUID sessionId : uploadSessionRepository.findSessionIdsInTree(rootId, pattern)) {
+            deleteAfterCommit(stagingPath(sessionId));
+        }
+        uploadSessionRepository.deleteInTree(rootId, pattern);
+    }
+
+    void deleteStaged(UUID sessionId) {
+        try {
+            Files.deleteIfExists(stagingPath(sessionId));
+        } catch (IOException e) {
+            log.warn("Failed to delete staged upload {}", sessionId, e);
+        }
+    }
+
+    /* ========================= */
+    /* Helpers */
+    /* ========================= */
+
+    private long writeChunk(UploadSession session, String sha256, InputStream body) {
+        long offset = session.getReceivedBytes();
+        long limit = Math.min(maxChunkSize.toBytes(), session.getSize() - offset);
+        MessageDigest digest = ContentHashes.newDigest();
+
+        try {
+            Path staged = stagingPath(session.getSessionId());
+            Files.createDirectories(staged.getParent());
+
+            try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // drops whatever an interrupted attempt left past the recorded offset
+                channel.truncate(offset);
+                channel.position(offset);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long written = 0;
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    written += read;
+                    if (written > limit) {
+                        channel.truncate(offset);
+                        throw new BadRequestException("Chunk exceeds the allowed size");
+                    }
+                    digest.update(buffer, 0, read);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+
+                if (written == 0) {
+                    throw new BadRequestException("Chunk is empty");
+                }
+
+                if (!sha256.equals(HexFormat.of().formatHex(digest.digest()))) {
+                    channel.truncate(offset);
+                    throw new UnprocessableContentException("Chunk does not match its checksum");
+                }
+
+                channel.force(false);
+                return written;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error staging upload chunk", e);
+        }
+    }
+
+    private void truncateStaged(UUID sessionId, long length) {
+        try (FileChannel channel = FileChannel.open(stagingPath(sessionId), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        } catch (IOException e) {
+            // the next append truncates to the recorded offset anyway
+            log.warn("Failed to truncate staged upload {}", sessionId, e);
+        }
+    }
+
+    private void deleteAfterCommit(Path staged) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    Files.deleteIfExists(staged);
+                } catch (IOException e) {
+                    log.warn("Failed to delete staged upload {}", staged, e);
+                }
+            }
+        });
+    }
+
+    private UploadSession findSession(UUID sessionId, JwtAuthenticationToken token) {
+        UploadSession session = transactionTemplate.execute(status -> uploadSessionRepository
+                .findBySessionIdAndTownTownId(sessionId, getUser(token).getTown().getTownId())
+                .orElseThrow(() -> new NotFoundException("Upload session not found")));
+
+        if (session.getExpiresAt().isBefore(Instant.now())) {
+            throw new BadRequestException("Upload session expired");
+        }
+
+        return session;
+    }
+
+    private UploadSessionResponseDTO toResponse(UploadSession session) {
+        return new UploadSessionResponseDTO(
+                session.getSessionId(),
+                session.getSize(),
+                session.getReceivedBytes(),
+                session.getNextChunk(),
+                maxChunkSize.toBytes(),
+                session.getExpiresAt());
+    }
+
+    private User getUser(JwtAuthenticationToken token) {
+        return userRepository.getReferenceById(UUID.fromString(token.getName()));
+    }
+}
@@ -0,0 +1,47 @@
+package com.nergal.docseq.services;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.nergal.docseq.entities.UploadSession;
+import com.nergal.docseq.repositories.UploadSessionRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Drops resumable uploads that went quiet past their expiry, along with their staged chunks
+@Slf4j
+@Service
+public class UploadSessionWorker {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadSessionService uploadSessionService;
+
+    public UploadSessionWorker(
+            UploadSessionRepository uploadSessionRepository,
+            UploadSessionService uploadSessionService) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadSessionService = uploadSessionService;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.upload-sessions.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        List<UploadSession> expired;
+        do {
+            expired = uploadSessionRepository.findByExpiresAtBefore(Instant.now(), PageRequest.of(0, BATCH_SIZE));
+            if (expired.isEmpty()) {
+                return;
+            }
+
+            uploadSessionRepository.deleteAllInBatch(expired);
+            expired.forEach(session -> uploadSessionService.deleteStaged(session.getSessionId()));
+
+            log.info("Purged {} expired upload sessions", expired.size());
+        } while (expired.size() == BATCH_SIZE);
+    }
+}
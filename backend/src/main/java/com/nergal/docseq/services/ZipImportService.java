@@ -0,0 +1,420 @@
+package com.nergal.docseq.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.nergal.docseq.dto.files.ZipImportEntryDTO;
+import com.nergal.docseq.dto.files.ZipImportEntryDTO.Status;
+import com.nergal.docseq.dto.files.ZipImportSummaryDTO;
+import com.nergal.docseq.entities.Blob;
+import com.nergal.docseq.entities.File;
+import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.User;
+import com.nergal.docseq.events.FolderTreeChangedEvent;
+import com.nergal.docseq.exception.BadRequestException;
+import com.nergal.docseq.exception.NotFoundException;
+import com.nergal.docseq.helpers.PathMultipartFile;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.TownRepository;
+import com.nergal.docseq.repositories.UserRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Imports a ZIP read straight from the request. Each PDF is spooled to a temp
+ * file only while it is being stored, so at most `concurrency` entries are on
+ * disk at once; directories become folders and File rows are inserted in batches.
+ */
+@Slf4j
+@Service
+public class ZipImportService {
+
+    private static final String PDF = "application/pdf";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] PDF_MAGIC = { '%', 'P', 'D', 'F', '-' };
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final UserRepository userRepository;
+    private final TownRepository townRepository;
+    private final FileService fileService;
+    private final BlobService blobService;
+    private final TransactionTemplate transactionTemplate;
+    private final StorageQuotaService storageQuotaService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${imports.concurrency:4}")
+    private int concurrency;
+
+    @Value("${imports.batch-size:100}")
+    private int batchSize;
+
+    @Value("${imports.max-entries:20000}")
+    private int maxEntries;
+
+    @Value("${imports.max-entry-size:200MB}")
+    private DataSize maxEntrySize;
+
+    public ZipImportService(
+            FileRepository fileRepository,
+            FolderRepository folderRepository,
+            UserRepository userRepository,
+            TownRepository townRepository,
+            FileService fileService,
+            BlobService blobService,
+            TransactionTemplate transactionTemplate,
+            StorageQuotaService storageQuotaService,
+            ApplicationEventPublisher eventPublisher) {
+        this.fileRepository = fileRepository;
+        this.folderRepository = folderRepository;
+        this.userRepository = userRepository;
+        this.townRepository = townRepository;
+        this.fileService = fileService;
+        this.blobService = blobService;
+        this.transactionTemplate = transactionTemplate;
+        this.storageQuotaService = storageQuotaService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public ZipImportSummaryDTO importZip(
+            InputStream archive,
+            UUID folderId,
+            JwtAuthenticationToken token,
+            Consumer<ZipImportEntryDTO> progress) {
+
+        Run run = transactionTemplate.execute(status -> {
+            User user = userRepository.findById(UUID.fromString(token.getName()))
+                    .orElseThrow(() -> new NotFoundException("User not found"));
+
+            Folder target = folderRepository
+                    .findByFolderIdAndTownTownIdAndDeletedAtIsNull(folderId, user.getTown().getTownId())
+                    .orElseThrow(() -> new NotFoundException("Folder not found"));
+
+            return new Run(user, target, progress);
+        });
+
+        Semaphore permits = new Semaphore(concurrency);
+        int entries = 0;
+
+        try {
+            try (ZipInputStream zip = new ZipInputStream(archive);
+                    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    run.drain(false);
+
+                    if (++entries > maxEntries) {
+                        run.report(new ZipImportEntryDTO(entry.getName(), Status.FAILED, null,
+                                "Archive has more than " + maxEntries + " entries"));
+                        break;
+                    }
+
+                    String path = normalize(entry.getName());
+                    if (path == null) {
+                        run.report(new ZipImportEntryDTO(entry.getName(), Status.SKIPPED, null, "Unsafe or hidden path"));
+                        continue;
+                    }
+
+                    if (entry.isDirectory()) {
+                        run.folderFor(path);
+                        continue;
+                    }
+
+                    int slash = path.lastIndexOf('/');
+                    String name = path.substring(slash + 1);
+                    if (!name.toLowerCase().endsWith(".pdf")) {
+                        run.report(new ZipImportEntryDTO(path, Status.SKIPPED, null, "Only PDF allowed"));
+                        continue;
+                    }
+
+                    Folder folder = run.folderFor(slash < 0 ? "" : path.substring(0, slash));
+
+                    permits.acquire();
+                    Path spooled;
+                    try {
+                        spooled = spool(zip);
+                    } catch (BadRequestException e) {
+                        permits.release();
+                        run.report(new ZipImportEntryDTO(path, Status.FAILED, null, e.getMessage()));
+                        continue;
+                    } catch (IOException | RuntimeException e) {
+                        permits.release();
+                        throw e;
+                    }
+
+                    Path staged = spooled;
+                    executor.submit(() -> {
+                        try {
+                            long size = Files.size(staged);
+                            // settled when flush inserts the File row, given back otherwise
+                            Blob blob = storageQuotaService.withHeldReservation(run.townId(), size,
+                                    () -> transactionTemplate.execute(status -> blobService
+                                            .store(new PathMultipartFile(staged, name, PDF))));
+                            run.stored.add(new Stored(path, fileService.newFile(
+                                    name, size, PDF, blob, folder, run.user), null));
+                        } catch (Exception e) {
+                            log.warn("Import of {} failed", path, e);
+                            run.stored.add(new Stored(path, null, e.getMessage()));
+                        } finally {
+                            deleteQuietly(staged);
+                            permits.release();
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                // what was already stored is kept; the rest of the archive is reported as unreadable
+                run.report(new ZipImportEntryDTO(null, Status.FAILED, null, "Archive could not be read: " + e.getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Import interrupted", e);
+            }
+
+            // the executor has been closed above, so every submitted entry is in the queue
+            run.drain(true);
+        } finally {
+            // after an aborted import, hands back what stored entries took but never inserted
+            run.discard();
+        }
+
+        return new ZipImportSummaryDTO(run.imported, run.skipped, run.failures.size(), run.foldersCreated,
+                run.failures);
+    }
+
+    /* ========================= */
+    /* Helpers */
+    /* ========================= */
+
+    // Rejects traversal and absolute paths, and drops archiver metadata such as __MACOSX
+    private static String normalize(String entryName) {
+        String path = entryName.replace('\\', '/');
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        if (path.isEmpty() || path.startsWith("/") || path.contains(":")) {
+            return null;
+        }
+
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")
+                    || segment.startsWith(".") || segment.equals("__MACOSX")) {
+                return null;
+            }
+        }
+
+        return path;
+    }
+
+    private Path spool(InputStream entry) throws IOException {
+        Path spooled = Files.createTempFile("docseq-import-", ".pdf");
+        long limit = maxEntrySize.toBytes();
+
+        try (OutputStream out = Files.newOutputStream(spooled)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = entry.read(buffer)) != -1) {
+                if (total < PDF_MAGIC.length && !startsLikePdf(buffer, read, (int) total)) {
+                    throw new BadRequestException("Not a PDF");
+                }
+                total += read;
+                if (total > limit) {
+                    throw new BadRequestException("File is too large");
+                }
+                out.write(buffer, 0, read);
+            }
+            if (total < PDF_MAGIC.length) {
+                throw new BadRequestException("File is empty");
+            }
+            return spooled;
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(spooled);
+            throw e;
+        }
+    }
+
+    private static boolean startsLikePdf(byte[] buffer, int length, int offset) {
+        for (int i = 0; offset + i < PDF_MAGIC.length && i < length; i++) {
+            if (buffer[i] != PDF_MAGIC[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}", path, e);
+        }
+    }
+
+    private record Stored(String path, File file, String error) {
+    }
+
+    // State of one import; everything except the stored queue is touched by the request thread only
+    private final class Run {
+
+        private final User user;
+        private final Folder target;
+        private final Consumer<ZipImportEntryDTO> progress;
+        private final Map<String, Folder> folders = new HashMap<>();
+        private final Queue<Stored> stored = new ConcurrentLinkedQueue<>();
+        private final List<Stored> pending = new ArrayList<>();
+        private final List<ZipImportEntryDTO> failures = new ArrayList<>();
+        private int imported;
+        private int skipped;
+        private int foldersCreated;
+
+        Run(User user, Folder target, Consumer<ZipImportEntryDTO> progress) {
+            this.user = user;
+            this.target = target;
+            this.progress = progress;
+            folders.put("", target);
+        }
+
+        // Finds or creates the folder for a directory path, reusing folders that already exist
+        Folder folderFor(String path) {
+            Folder folder = folders.get(path);
+            if (folder != null) {
+                return folder;
+            }
+
+            int slash = path.lastIndexOf('/');
+            Folder parent = folderFor(slash < 0 ? "" : path.substring(0, slash));
+            String name = path.substring(slash + 1);
+
+            folder = transactionTemplate.execute(status -> {
+                // the cached parent may have been moved since; read its path again under the tree lock
+                townRepository.lockFolderTree(townId());
+                Folder current = folderRepository.findByFolderIdAndDeletedAtIsNull(parent.getFolderId())
+                        .orElseThrow(() -> new NotFoundException("Folder " + parent.getName() + " was deleted"));
+
+                return folderRepository.findFirstByNameAndParentAndDeletedAtIsNull(name, current)
+                        .orElseGet(() -> {
+                            Folder created = new Folder();
+                            created.setName(name);
+                            created.setParent(current);
+                            created.setTown(user.getTown());
+                            created.setCreatedBy(user);
+                            foldersCreated++;
+                            folderRepository.save(created);
+                            eventPublisher.publishEvent(FolderTreeChangedEvent.saved(
+                                    created, townRepository.nextTreeVersion(townId())));
+                            return created;
+                        });
+            });
+
+            folders.put(path, folder);
+            return folder;
+        }
+
+        UUID townId() {
+            return target.getTown().getTownId();
+        }
+
+        void drain(boolean all) {
+            Stored next;
+            while ((next = stored.poll()) != null) {
+                if (next.file() == null) {
+                    report(new ZipImportEntryDTO(next.path(), Status.FAILED, null, next.error()));
+                } else {
+                    pending.add(next);
+                }
+            }
+
+            if (pending.size() >= batchSize || (all && !pending.isEmpty())) {
+                flush();
+            }
+        }
+
+        // Drops anything left queued or pending without reporting it; a no-op after drain(true)
+        void discard() {
+            Stored next;
+            while ((next = stored.poll()) != null) {
+                if (next.file() != null) {
+                    pending.add(next);
+                }
+            }
+
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            List<File> files = pending.stream().map(Stored::file).toList();
+            pending.clear();
+
+            try {
+                release(files);
+            } catch (RuntimeException e) {
+                log.error("Releasing {} entries of an aborted import failed", files.size(), e);
+            }
+        }
+
+        private void flush() {
+            List<Stored> batch = List.copyOf(pending);
+            List<File> files = batch.stream().map(Stored::file).toList();
+            pending.clear();
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    fileRepository.saveAll(files);
+                    storageQuotaService.settle(townId(), files.stream().mapToLong(File::getSize).sum());
+                });
+            } catch (RuntimeException e) {
+                log.warn("Inserting a batch of {} imported files failed", files.size(), e);
+                release(files);
+                for (Stored s : batch) {
+                    report(new ZipImportEntryDTO(s.path(), Status.FAILED, null, "Could not save file"));
+                }
+                return;
+            }
+
+            for (Stored s : batch) {
+                report(new ZipImportEntryDTO(s.path(), Status.IMPORTED, s.file().getFileId(), null));
+            }
+        }
+
+        // Gives back the references and quota taken when the content was stored
+        private void release(List<File> files) {
+            transactionTemplate.executeWithoutResult(status -> blobService.releaseAll(files));
+            storageQuotaService.giveBack(townId(), files.stream().mapToLong(File::getSize).sum());
+        }
+
+        void report(ZipImportEntryDTO result) {
+            switch (result.status()) {
+                case IMPORTED -> imported++;
+                case SKIPPED -> skipped++;
+                case FAILED -> failures.add(result);
+            }
+            progress.accept(result);
+        }
+    }
+}
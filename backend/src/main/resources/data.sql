@@ -1,2 +1,31 @@
 INSERT INTO tb_roles (role_id, name) VALUES (1, 'basic') ON CONFLICT (role_id) DO NOTHING;
-INSERT INTO tb_roles (role_id, name) VALUES (2, 'admin') ON CONFLICT (role_id) DO NOTHING;
\ No newline at end of file
+INSERT INTO tb_roles (role_id, name) VALUES (2, 'admin') ON CONFLICT (role_id) DO NOTHING;
+-- Full-text index over extracted PDF text (see BlobContent)
+ALTER TABLE tb_blob_contents ADD COLUMN IF NOT EXISTS content_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('portuguese', content_text)) STORED;
+CREATE INDEX IF NOT EXISTS idx_blob_contents_tsv ON tb_blob_contents USING GIN (content_tsv);
+
+-- Trigram indexes for name search (see NameSearch); scoped by town and live rows only
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+CREATE INDEX IF NOT EXISTS idx_files_town_name_trgm
+    ON tb_files USING GIN (town_id, lower(name) gin_trgm_ops) WHERE deleted_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_folders_town_name_trgm
+    ON tb_folders USING GIN (town_id, lower(name) gin_trgm_ops) WHERE deleted_at IS NULL;
+
+-- Byte-ordered key indexes for the storage reconciliation merge-join (see StorageReconciliationService)
+CREATE INDEX IF NOT EXISTS idx_files_object_key_c ON tb_files (object_key COLLATE "C");
+CREATE INDEX IF NOT EXISTS idx_files_thumbnail_key_c ON tb_files (thumbnail_key COLLATE "C");
+
+-- Materialized folder paths (see Folder.path): backfill rows created before the column, then index prefix lookups
+WITH RECURSIVE tree AS (
+    SELECT folder_id, CAST('/' AS varchar(4096)) AS path FROM tb_folders WHERE parent_id IS NULL
+    UNION ALL
+    SELECT f.folder_id, CAST(t.path || f.parent_id || '/' AS varchar(4096))
+    FROM tb_folders f JOIN tree t ON f.parent_id = t.folder_id
+)
+UPDATE tb_folders f SET path = tree.path FROM tree WHERE f.folder_id = tree.folder_id AND f.path IS NULL;
+CREATE INDEX IF NOT EXISTS idx_folders_path ON tb_folders (path varchar_pattern_ops);
+
+-- Upload sessions created before optimistic locking (see UploadSession.version)
+UPDATE tb_upload_sessions SET version = 0 WHERE version IS NULL;
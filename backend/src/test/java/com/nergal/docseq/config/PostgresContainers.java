@@ -0,0 +1,17 @@
+package com.nergal.docseq.config;
+
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+/*
+ * Shared Postgres for tests of native SQL that H2 cannot run.
+ * Use with @ImportTestcontainers(PostgresContainers.class) and
+ * @Testcontainers(disabledWithoutDocker = true).
+ */
+public interface PostgresContainers {
+
+    @Container
+    @ServiceConnection
+    PostgreSQLContainer postgres = new PostgreSQLContainer("postgres:17-alpine");
+}
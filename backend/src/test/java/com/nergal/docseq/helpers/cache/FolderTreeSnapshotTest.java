@@ -0,0 +1,110 @@
+package com.nergal.docseq.helpers.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.nergal.docseq.dto.folders.FolderTreeResponseDTO;
+
+class FolderTreeSnapshotTest {
+
+    private final UUID docs = UUID.randomUUID();
+    private final UUID reports = UUID.randomUUID();
+    private final UUID old = UUID.randomUUID();
+    private final UUID photos = UUID.randomUUID();
+
+    // docs/reports/old and photos
+    private FolderTreeSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        snapshot = FolderTreeSnapshot.of(
+                3,
+                List.of(docs, reports, old, photos),
+                Arrays.asList(null, docs, reports, null),
+                List.of("docs", "reports", "old", "photos"),
+                List.of(false, true, false, false));
+    }
+
+    @Test
+    @DisplayName("isAncestor should walk every level up, and only up")
+    void isAncestor_shouldOnlyMatchStrictAncestors() {
+        assertTrue(snapshot.isAncestor(docs, reports));
+        assertTrue(snapshot.isAncestor(docs, old));
+        assertFalse(snapshot.isAncestor(old, docs));
+        assertFalse(snapshot.isAncestor(docs, docs));
+        assertFalse(snapshot.isAncestor(photos, old));
+        assertFalse(snapshot.isAncestor(docs, UUID.randomUUID()));
+    }
+
+    @Test
+    @DisplayName("withFolder should add a new folder under its parent")
+    void withFolder_shouldAddAFolder() {
+        UUID drafts = UUID.randomUUID();
+
+        FolderTreeSnapshot changed = snapshot.withFolder(drafts, reports, "drafts", false, 4);
+
+        assertEquals(4, changed.getVersion());
+        assertTrue(changed.isAncestor(docs, drafts));
+        assertEquals(List.of("old", "drafts"), names(child(changed.toTree(), "docs", "reports").children()));
+        assertFalse(snapshot.contains(drafts));
+    }
+
+    @Test
+    @DisplayName("withFolder should rename and move an existing folder with its subtree")
+    void withFolder_shouldReplaceAnExistingFolder() {
+        FolderTreeSnapshot changed = snapshot.withFolder(reports, photos, "archive", true, 4);
+
+        assertTrue(changed.isAncestor(photos, old));
+        assertFalse(changed.isAncestor(docs, old));
+        assertEquals(List.of(), child(changed.toTree(), "docs").children());
+        FolderTreeResponseDTO moved = child(changed.toTree(), "photos", "archive");
+        assertTrue(moved.favorite());
+        assertEquals(List.of("old"), names(moved.children()));
+        // the original is left untouched
+        assertEquals(List.of("reports"), names(child(snapshot.toTree(), "docs").children()));
+    }
+
+    @Test
+    @DisplayName("withoutSubtree should drop the folder and everything below it")
+    void withoutSubtree_shouldDropDescendants() {
+        FolderTreeSnapshot changed = snapshot.withoutSubtree(reports, 4);
+
+        assertEquals(4, changed.getVersion());
+        assertTrue(changed.contains(docs));
+        assertFalse(changed.contains(reports));
+        assertFalse(changed.contains(old));
+        assertEquals(List.of("docs", "photos"), names(changed.toTree()));
+        assertTrue(snapshot.contains(old));
+    }
+
+    @Test
+    @DisplayName("withoutSubtree should only move the version for a folder it does not hold")
+    void withoutSubtree_shouldKeepTheTree_WhenTheFolderIsMissing() {
+        FolderTreeSnapshot changed = snapshot.withoutSubtree(UUID.randomUUID(), 4);
+
+        assertEquals(4, changed.getVersion());
+        assertEquals(snapshot.toTree(), changed.toTree());
+    }
+
+    private static FolderTreeResponseDTO child(List<FolderTreeResponseDTO> nodes, String... path) {
+        FolderTreeResponseDTO node = null;
+        for (String name : path) {
+            node = nodes.stream().filter(n -> n.name().equals(name)).findFirst().orElseThrow();
+            nodes = node.children();
+        }
+        return node;
+    }
+
+    private static List<String> names(List<FolderTreeResponseDTO> nodes) {
+        return nodes.stream().map(FolderTreeResponseDTO::name).toList();
+    }
+}
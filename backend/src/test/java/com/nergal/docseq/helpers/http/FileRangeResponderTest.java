@@ -0,0 +1,127 @@
+package com.nergal.docseq.helpers.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+class FileRangeResponderTest {
+
+    private static final String CONTENT = "0123456789";
+    private static final String ETAG = FileRangeResponder.eTagFor("uploads/abc123.pdf");
+
+    @TempDir
+    private Path directory;
+
+    private Path file;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.writeString(directory.resolve("abc123.pdf"), CONTENT, StandardCharsets.UTF_8);
+        request = new MockHttpServletRequest("GET", "/files/abc123/view");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    @DisplayName("Should send the whole file when no range is asked for")
+    void write_shouldSendTheWholeFile() throws IOException {
+        assertEquals(10, write());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    @DisplayName("Should send only the bytes of a single range")
+    void write_shouldSendASingleRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        assertEquals(4, write());
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("Should send the last bytes for a suffix range")
+    void write_shouldSendASuffixRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+
+        assertEquals(3, write());
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("Should answer 416 with the file length for a range past the end")
+    void write_shouldRejectAnUnsatisfiableRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-30");
+
+        assertEquals(0, write());
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("Should send the whole file when If-Range names another version")
+    void write_shouldIgnoreTheRange_WhenIfRangeDoesNotMatch() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+
+        assertEquals(10, write());
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("Should honor the range when If-Range names this version")
+    void write_shouldSendTheRange_WhenIfRangeMatches() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+
+        assertEquals(4, write());
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    @DisplayName("Should answer 304 without a body when If-None-Match has the ETag")
+    void write_shouldAnswerNotModified_WhenIfNoneMatchMatches() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, ETAG);
+
+        assertEquals(0, write());
+
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getContentAsString());
+        // a 304 carries the caching headers too
+        assertEquals(ImmutableContent.PRIVATE.getHeaderValue(), response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    private long write() throws IOException {
+        return FileRangeResponder.write(file, "application/pdf", "scan.pdf", ETAG, request, response);
+    }
+}
@@ -0,0 +1,136 @@
+package com.nergal.docseq.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.context.ImportTestcontainers;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.nergal.docseq.config.PostgresContainers;
+import com.nergal.docseq.entities.Blob;
+import com.nergal.docseq.entities.File;
+import com.nergal.docseq.entities.StorageDeletion;
+import com.nergal.docseq.repositories.BlobRepository;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+
+import jakarta.persistence.EntityManager;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@ImportTestcontainers(PostgresContainers.class)
+@Import(BlobService.class)
+class BlobServiceTest {
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private StorageDeletionRepository storageDeletionRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @MockitoBean
+    private StorageService storageService;
+
+    private final MockMultipartFile pdf = new MockMultipartFile(
+            "file", "scan.pdf", "application/pdf", "%PDF-1.7 same bytes".getBytes());
+
+    @BeforeEach
+    void setUp() {
+        when(storageService.upload(any(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(1) + ".pdf");
+    }
+
+    @Test
+    @DisplayName("Storing the same content twice should keep one blob with two references")
+    void store_shouldShareOneBlob_WhenContentRepeats() {
+        Blob first = blobService.store(pdf);
+        Blob second = blobService.store(pdf);
+
+        assertSame(first, second);
+        assertEquals(2L, reload(first).getRefCount());
+        verify(storageService, times(1)).upload(any(), anyString());
+    }
+
+    @Test
+    @DisplayName("Releasing the last reference should drop the blob and queue its object for deletion")
+    void release_shouldQueueDeletion_WhenLastReferenceGoes() {
+        Blob blob = blobService.store(pdf);
+        String objectKey = blob.getObjectKey();
+
+        blobService.release(fileOf(blob));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertTrue(blobRepository.findById(blob.getContentHash()).isEmpty());
+        List<StorageDeletion> deletions = storageDeletionRepository.findAll();
+        assertEquals(1, deletions.size());
+        assertEquals(objectKey, deletions.get(0).getObjectKey());
+        assertEquals(blob.getContentHash(), deletions.get(0).getContentHash());
+    }
+
+    @Test
+    @DisplayName("Releasing one of two references should keep the blob and queue nothing")
+    void release_shouldKeepBlob_WhileOtherReferencesRemain() {
+        Blob blob = blobService.store(pdf);
+        blobService.store(pdf);
+
+        blobService.release(fileOf(blob));
+
+        assertEquals(1L, reload(blob).getRefCount());
+        assertEquals(0, storageDeletionRepository.count());
+    }
+
+    @Test
+    @DisplayName("Uploading the content again before the worker drains should cancel its deletion")
+    void store_shouldCancelPendingDeletion_WhenContentReturns() {
+        Blob blob = blobService.store(pdf);
+        blobService.release(fileOf(blob));
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(1, storageDeletionRepository.count());
+
+        Blob again = blobService.store(pdf);
+
+        assertEquals(1L, reload(again).getRefCount());
+        assertEquals(0, storageDeletionRepository.count());
+        verify(storageService, times(2)).upload(any(), anyString());
+    }
+
+    private File fileOf(Blob blob) {
+        File file = new File();
+        file.setBlob(blob);
+        file.setObjectKey(blob.getObjectKey());
+        return file;
+    }
+
+    private Blob reload(Blob blob) {
+        entityManager.flush();
+        entityManager.clear();
+        return blobRepository.findById(blob.getContentHash()).orElseThrow();
+    }
+}
@@ -0,0 +1,428 @@
+package com.nergal.docseq.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.context.ImportTestcontainers;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.nergal.docseq.config.PostgresContainers;
+import com.nergal.docseq.dto.folders.FolderArchiveDTO;
+import com.nergal.docseq.dto.folders.FolderRequestDTO;
+import com.nergal.docseq.entities.Blob;
+import com.nergal.docseq.entities.File;
+import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.Role;
+import com.nergal.docseq.entities.StorageDeletion;
+import com.nergal.docseq.entities.Town;
+import com.nergal.docseq.entities.User;
+import com.nergal.docseq.exception.BadRequestException;
+import com.nergal.docseq.exception.NotFoundException;
+import com.nergal.docseq.helpers.ContentHashes;
+import com.nergal.docseq.repositories.BlobRepository;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.RoleRepository;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+import com.nergal.docseq.repositories.TownRepository;
+import com.nergal.docseq.repositories.UserRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+// one row per archive page, so the keyset paging is exercised
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "downloads.archive-page-size=1" })
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@ImportTestcontainers(PostgresContainers.class)
+@Import({ FolderService.class, BlobService.class, StorageQuotaService.class, UploadSessionService.class })
+class FolderServiceTest {
+
+    @Autowired
+    private FolderService folderService;
+
+    @Autowired
+    private BlobService blobService;
+
+    @Autowired
+    private FolderRepository folderRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private BlobRepository blobRepository;
+
+    @Autowired
+    private StorageDeletionRepository storageDeletionRepository;
+
+    @Autowired
+    private TownRepository townRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockitoBean
+    private StorageService storageService;
+
+    @MockitoBean
+    private FolderTreeCache folderTreeCache;
+
+    @MockitoBean
+    private FileService fileService;
+
+    private Statistics statistics;
+    private Town town;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        when(storageService.upload(any(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(1) + ".pdf");
+
+        town = new Town();
+        town.setName("Town " + UUID.randomUUID());
+        town.setUf("SP");
+        town.setImageUrl("town.png");
+        townRepository.save(town);
+    }
+
+    @Test
+    @DisplayName("Soft delete and restore should take the same statements for a small and a large subtree")
+    void shouldSoftDeleteAndRestoreInFixedStatements_WhateverTheSubtreeSize() {
+        Folder small = tree("small", 1, 2);
+        Folder large = tree("large", 4, 3);
+
+        long softDeleteSmall = countStatements(() -> folderService.softDeleteRecursively(small, null));
+        long softDeleteLarge = countStatements(() -> folderService.softDeleteRecursively(large, null));
+        assertEquals(softDeleteSmall, softDeleteLarge);
+        assertEquals(124, folderRepository.findByTownTownIdAndDeletedAtIsNotNull(town.getTownId(), Pageable.unpaged())
+                .getTotalElements());
+
+        Folder deletedSmall = reload(small);
+        Folder deletedLarge = reload(large);
+        long restoreSmall = countStatements(() -> folderService.restoreRecursively(deletedSmall));
+        long restoreLarge = countStatements(() -> folderService.restoreRecursively(deletedLarge));
+        assertEquals(restoreSmall, restoreLarge);
+        assertEquals(0, folderRepository.findByTownTownIdAndDeletedAtIsNotNull(town.getTownId(), Pageable.unpaged())
+                .getTotalElements());
+    }
+
+    @Test
+    @DisplayName("Permanent delete should take the same statements for a small and a large subtree")
+    void shouldDeleteInFixedStatements_WhateverTheSubtreeSize() {
+        Folder small = tree("small", 1, 2);
+        Folder large = tree("large", 4, 3);
+        Folder kept = tree("kept", 1, 1);
+
+        long deleteSmall = countStatements(() -> folderService.permanentDeleteRecursively(small));
+        long deleteLarge = countStatements(() -> folderService.permanentDeleteRecursively(large));
+        assertEquals(deleteSmall, deleteLarge);
+
+        assertEquals(2, folderRepository.findByTownTownId(town.getTownId()).size());
+        assertEquals(2, fileRepository.count());
+        assertEquals(1, folderRepository.findDescendants(kept).size());
+        // only the kept tree still references the shared content
+        assertEquals(2L, blob("shared").getRefCount());
+        assertEquals(0, storageDeletionRepository.count());
+    }
+
+    @Test
+    @DisplayName("Permanent delete should drop content only the subtree used and keep shared content")
+    void shouldReleaseBlobsOfTheSubtree_AndKeepSharedOnes() {
+        Folder root = folder("root", null);
+        Folder child = folder("child", root);
+        Folder outside = folder("outside", null);
+
+        Blob own = file("own.pdf", root, "own");
+        file("copy.pdf", child, "shared");
+        file("kept.pdf", outside, "shared");
+        // one file in each folder above plus the two added here
+        assertEquals(5L, blob("shared").getRefCount());
+
+        folderService.permanentDeleteRecursively(reload(root));
+        entityManager.flush();
+        entityManager.clear();
+
+        assertEquals(2L, blob("shared").getRefCount());
+        assertTrue(blobRepository.findById(own.getContentHash()).isEmpty());
+
+        List<StorageDeletion> deletions = storageDeletionRepository.findAll();
+        assertEquals(1, deletions.size());
+        assertEquals(own.getObjectKey(), deletions.get(0).getObjectKey());
+        assertEquals(own.getContentHash(), deletions.get(0).getContentHash());
+    }
+
+    @Test
+    @DisplayName("An archive should lay out every folder and list unreadable files instead of stopping")
+    void writeArchive_shouldListMissingObjects() throws IOException {
+        JwtAuthenticationToken token = user();
+        Folder root = folder("docs", null);
+        Folder child = folder("reports", root);
+        emptyFolder("old", child);
+        Blob lost = file("lost.pdf", child, "lost");
+
+        when(storageService.open(anyString())).thenAnswer(invocation -> {
+            if (lost.getObjectKey().equals(invocation.getArgument(0))) {
+                throw new NotFoundException("File content not found");
+            }
+            return new ByteArrayInputStream("%PDF".getBytes(StandardCharsets.UTF_8));
+        });
+
+        FolderArchiveDTO archive = folderService.getArchive(root.getFolderId(), token);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        folderService.writeArchive(archive, out);
+
+        Map<String, String> entries = unzip(out.toByteArray());
+        assertEquals(List.of("reports/", "reports/old/"), archive.directories());
+        assertEquals("%PDF", entries.get("docs.pdf"));
+        assertEquals("%PDF", entries.get("reports/reports.pdf"));
+        assertTrue(entries.containsKey("reports/old/"));
+        assertFalse(entries.containsKey("reports/lost.pdf"));
+        assertTrue(entries.get("MISSING.txt").contains("reports/lost.pdf"));
+    }
+
+    @Test
+    @DisplayName("Moving a folder should re-root the paths of everything below it")
+    void move_shouldRerootTheSubtreePaths() {
+        JwtAuthenticationToken token = user();
+        Folder moved = emptyFolder("moved", null);
+        Folder child = emptyFolder("child", moved);
+        Folder grandchild = emptyFolder("grandchild", child);
+        Folder target = emptyFolder("target", null);
+
+        folderService.move(moved.getFolderId(), target.getFolderId(), token);
+
+        String movedPath = target.getSubtreePath() + moved.getFolderId() + "/";
+        assertEquals(movedPath, reload(child).getPath());
+        assertEquals(movedPath + child.getFolderId() + "/", reload(grandchild).getPath());
+        assertEquals(3, folderRepository.findDescendants(reload(target)).size());
+        assertEquals(List.of(grandchild.getFolderId()), folderRepository.findDescendants(reload(child)).stream()
+                .map(Folder::getFolderId)
+                .toList());
+    }
+
+    @Test
+    @DisplayName("Moving a folder into its own subtree should be rejected")
+    void move_shouldRejectAMoveIntoItsOwnSubtree() {
+        JwtAuthenticationToken token = user();
+        Folder moved = emptyFolder("moved", null);
+        Folder grandchild = emptyFolder("grandchild", emptyFolder("child", moved));
+
+        assertThrows(BadRequestException.class,
+                () -> folderService.move(moved.getFolderId(), grandchild.getFolderId(), token));
+    }
+
+    @Test
+    @DisplayName("A folder created under a folder that was just moved should get the moved path")
+    void create_shouldUseThePathOfAFolderJustMoved() {
+        JwtAuthenticationToken token = user();
+        Folder moved = emptyFolder("moved", null);
+        Folder child = emptyFolder("child", moved);
+        Folder target = emptyFolder("target", null);
+
+        folderService.move(moved.getFolderId(), target.getFolderId(), token);
+        folderService.create(new FolderRequestDTO("created", child.getFolderId()), token);
+
+        Folder created = created("created", child);
+        assertEquals(target.getSubtreePath() + moved.getFolderId() + "/" + child.getFolderId() + "/",
+                created.getPath());
+
+        // so subtree statements on the new root reach it
+        folderService.softDeleteRecursively(reload(target), null);
+        assertNotNull(reload(created).getDeletedAt());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @DisplayName("A create racing a move of its parent's ancestor should wait and get the moved path")
+    void create_shouldWaitForAConcurrentMove() throws Exception {
+        JwtAuthenticationToken token = user();
+        Folder moved = emptyFolder("moved", null);
+        Folder child = emptyFolder("child", moved);
+        Folder target = emptyFolder("target", null);
+
+        CompletableFuture<Void> creating = transactionTemplate.execute(status -> {
+            folderService.move(moved.getFolderId(), target.getFolderId(), token);
+
+            // the move holds the town's tree lock until this transaction commits
+            CompletableFuture<Void> create = CompletableFuture.runAsync(
+                    () -> folderService.create(new FolderRequestDTO("created", child.getFolderId()), token));
+            pause();
+            return create;
+        });
+        creating.get(10, TimeUnit.SECONDS);
+
+        assertEquals(target.getSubtreePath() + moved.getFolderId() + "/" + child.getFolderId() + "/",
+                created("created", child).getPath());
+    }
+
+    private long countStatements(Runnable operation) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+
+        operation.run();
+
+        entityManager.flush();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private Folder reload(Folder folder) {
+        entityManager.flush();
+        entityManager.clear();
+        return folderRepository.findById(folder.getFolderId()).orElseThrow();
+    }
+
+    private Blob blob(String content) {
+        entityManager.flush();
+        entityManager.clear();
+        return blobRepository.findById(ContentHashes.sha256(pdf(content))).orElseThrow();
+    }
+
+    private static MockMultipartFile pdf(String content) {
+        return new MockMultipartFile("file", content + ".pdf", "application/pdf", ("%PDF-1.7 " + content).getBytes());
+    }
+
+    // A root with `fanout` children per folder, `depth` levels deep, and one file per folder
+    private Folder tree(String name, int depth, int fanout) {
+        Folder root = folder(name, null);
+        addChildren(root, depth, fanout);
+        return root;
+    }
+
+    private void addChildren(Folder parent, int depth, int fanout) {
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < fanout; i++) {
+            addChildren(folder(parent.getName() + "-" + i, parent), depth - 1, fanout);
+        }
+    }
+
+    // Each folder gets one file holding a reference to the shared content
+    private Folder folder(String name, Folder parent) {
+        Folder folder = emptyFolder(name, parent);
+        file(name + ".pdf", folder, "shared");
+        return folder;
+    }
+
+    private Folder emptyFolder(String name, Folder parent) {
+        Folder folder = new Folder();
+        folder.setName(name);
+        folder.setParent(parent);
+        folder.setTown(town);
+        return folderRepository.save(folder);
+    }
+
+    private Folder created(String name, Folder parent) {
+        entityManager.clear();
+        return folderRepository.findFirstByNameAndParentAndDeletedAtIsNull(name, parent).orElseThrow();
+    }
+
+    // A basic user of the town; admins cannot create folders
+    private JwtAuthenticationToken user() {
+        Role role = new Role();
+        role.setName(Role.Values.basic);
+        roleRepository.save(role);
+
+        User user = new User();
+        user.setUsername("user-" + UUID.randomUUID());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("password");
+        user.setRole(role);
+        user.setTown(town);
+        userRepository.save(user);
+
+        return new JwtAuthenticationToken(
+                Jwt.withTokenValue("token").header("alg", "none").claim("sub", user.getUserId().toString()).build());
+    }
+
+    private static Map<String, String> unzip(byte[] zip) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (ZipEntry entry; (entry = in.getNextEntry()) != null;) {
+                entries.put(entry.getName(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    // Gives a request started on another thread time to reach the lock
+    private static void pause() {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stores the content like an upload does, taking one more reference to its blob
+    private Blob file(String name, Folder folder, String content) {
+        Blob blob = blobService.store(pdf(content));
+
+        File file = new File();
+        file.setName(name);
+        file.setContentType("application/pdf");
+        file.setSize(1L);
+        file.setObjectKey(blob.getObjectKey());
+        file.setBlob(blob);
+        file.setFolder(folder);
+        file.setTown(town);
+        fileRepository.save(file);
+        return blob;
+    }
+}
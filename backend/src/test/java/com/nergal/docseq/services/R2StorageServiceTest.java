@@ -0,0 +1,222 @@
+package com.nergal.docseq.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class R2StorageServiceTest {
+
+    // Surefire caps the test JVM at 256 MB, so this can only pass if the body is streamed
+    private static final long LARGE_FILE_SIZE = 1024L * 1024 * 1024;
+
+    private static final long MULTIPART_FILE_SIZE = 128L * 1024 * 1024;
+    private static final long STREAM_BANDWIDTH = 32L * 1024 * 1024;
+
+    private S3StandIn s3;
+    private R2StorageService storageService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        s3 = new S3StandIn();
+        storageService = newStorageService(s3, Long.MAX_VALUE, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3.close();
+        storageService.shutdown();
+    }
+
+    private R2StorageService newStorageService(S3StandIn endpoint, long multipartThreshold, int concurrency) {
+        R2StorageService service = new R2StorageService(endpoint.client(), null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "bucketName", "docseq");
+        ReflectionTestUtils.setField(service, "multipartThreshold", DataSize.ofBytes(multipartThreshold));
+        ReflectionTestUtils.setField(service, "multipartPartSize", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(service, "multipartConcurrency", concurrency);
+        return service;
+    }
+
+    @Test
+    @DisplayName("Should stream an upload larger than the heap without buffering it")
+    void upload_shouldStreamFilesLargerThanTheHeap() {
+        UUID fileId = UUID.randomUUID();
+
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        assertTrue(LARGE_FILE_SIZE > maxHeap, "file must be larger than the heap cap");
+
+        String key = storageService.upload(new GeneratedPdf(LARGE_FILE_SIZE), fileId.toString());
+
+        assertEquals(fileId + ".pdf", key);
+        assertEquals(LARGE_FILE_SIZE, s3.sizeOf(key));
+    }
+
+    // Each part takes a quarter second at the capped rate, so parts that run in parallel overlap
+    @ParameterizedTest(name = "{0} parallel part(s)")
+    @ValueSource(ints = { 1, 4, 8 })
+    @DisplayName("Should upload exactly as many multipart parts at once as configured")
+    void upload_shouldUploadPartsInParallel(int concurrency) throws IOException {
+        try (S3StandIn throttled = new S3StandIn(STREAM_BANDWIDTH)) {
+            uploadMultipart(throttled, concurrency);
+
+            assertEquals(concurrency, throttled.maxConcurrentParts());
+        }
+    }
+
+    // Wall-clock numbers depend on the machine, so this only runs with -Dbenchmarks=true
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+    @ParameterizedTest(name = "{0} parallel part(s)")
+    @ValueSource(ints = { 1, 4, 8 })
+    @DisplayName("Benchmark: multipart upload throughput against a stream-capped endpoint")
+    void benchmark_multipartThroughput(int concurrency) throws IOException {
+        try (S3StandIn throttled = new S3StandIn(STREAM_BANDWIDTH)) {
+            long start = System.nanoTime();
+            uploadMultipart(throttled, concurrency);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("multipart upload, %d parallel part(s): %.1f MB/s%n",
+                    concurrency, MULTIPART_FILE_SIZE / 1024.0 / 1024.0 / seconds);
+        }
+    }
+
+    // Each request is capped like a single slow TCP stream, so only parallel parts raise throughput
+    private void uploadMultipart(S3StandIn endpoint, int concurrency) {
+        R2StorageService service = newStorageService(endpoint, 0, concurrency);
+        try {
+            String key = service.upload(new GeneratedPdf(MULTIPART_FILE_SIZE), UUID.randomUUID().toString());
+
+            assertEquals(MULTIPART_FILE_SIZE, endpoint.sizeOf(key));
+            assertEquals(16, endpoint.partsReceived());
+            assertEquals(0, endpoint.pendingMultipartUploads());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should abort the multipart upload when a part fails")
+    void upload_shouldAbortMultipartUploadOnFailure() {
+        storageService.shutdown();
+        storageService = newStorageService(s3, 0, 4);
+        s3.failPart(3);
+
+        assertThrows(RuntimeException.class,
+                () -> storageService.upload(new GeneratedPdf(MULTIPART_FILE_SIZE), UUID.randomUUID().toString()));
+
+        assertEquals(1, s3.abortedUploads());
+        assertEquals(0, s3.pendingMultipartUploads());
+    }
+
+    @Test
+    @DisplayName("Should keep a multipart upload whose completion went through but lost its response")
+    void upload_shouldNotRetryComplete_WhenItsResponseIsLost() {
+        storageService.shutdown();
+        storageService = newStorageService(s3, 0, 4);
+        s3.loseCompleteResponse();
+
+        String key = storageService.upload(new GeneratedPdf(MULTIPART_FILE_SIZE), UUID.randomUUID().toString());
+
+        assertEquals(MULTIPART_FILE_SIZE, s3.sizeOf(key));
+        assertEquals(1, s3.completeRequests());
+        assertEquals(0, s3.abortedUploads());
+    }
+
+    /**
+     * Multipart file whose content is generated on read, so the test itself
+     * never materializes it. {@link #getBytes()} fails to catch buffering.
+     */
+    static class GeneratedPdf implements MultipartFile {
+
+        private final long size;
+
+        GeneratedPdf(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "scan.pdf";
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/pdf";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new AssertionError("upload must not buffer the whole file");
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private long position;
+
+                @Override
+                public int read() {
+                    return position < size ? (int) (position++ & 0x7f) : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (position >= size) {
+                        return -1;
+                    }
+                    int n = (int) Math.min(len, size - position);
+                    for (int i = 0; i < n; i++) {
+                        b[off + i] = (byte) ((position + i) & 0x7f);
+                    }
+                    position += n;
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) {
+                    long skipped = Math.max(0, Math.min(n, size - position));
+                    position += skipped;
+                    return skipped;
+                }
+            };
+        }
+
+        @Override
+        public void transferTo(File dest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.nergal.docseq.services;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+
+/**
+ * Minimal S3-compatible endpoint for tests. Request bodies are drained and
+ * counted, never kept, so arbitrarily large uploads can be pushed through it.
+ * An optional per-request bandwidth cap emulates a single slow TCP stream.
+ */
+class S3StandIn implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final HttpServer server;
+    private final long bytesPerSecondPerStream;
+    private final Map<String, Long> objects = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> multipartUploads = new ConcurrentHashMap<>();
+    private final AtomicInteger partsReceived = new AtomicInteger();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+    private final AtomicInteger abortedUploads = new AtomicInteger();
+    private final AtomicInteger completeRequests = new AtomicInteger();
+    private volatile int failingPart = -1;
+    private volatile boolean losingCompleteResponse;
+
+    S3StandIn() throws IOException {
+        this(0);
+    }
+
+    S3StandIn(long bytesPerSecondPerStream) throws IOException {
+        this.bytesPerSecondPerStream = bytesPerSecondPerStream;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    S3Client client() {
+        return S3Client.builder()
+                .endpointOverride(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create("test", "test")))
+                .serviceConfiguration(S3Configuration.builder()
+                        .pathStyleAccessEnabled(true)
+                        .build())
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .build();
+    }
+
+    Long sizeOf(String key) {
+        return objects.get(key);
+    }
+
+    int partsReceived() {
+        return partsReceived.get();
+    }
+
+    // The most UploadPart requests that were being received at once
+    int maxConcurrentParts() {
+        return maxPartsInFlight.get();
+    }
+
+    int abortedUploads() {
+        return abortedUploads.get();
+    }
+
+    int pendingMultipartUploads() {
+        return multipartUploads.size();
+    }
+
+    int completeRequests() {
+        return completeRequests.get();
+    }
+
+    void failPart(int partNumber) {
+        this.failingPart = partNumber;
+    }
+
+    // Completes multipart uploads but answers with a retryable error, as if the response was lost
+    void loseCompleteResponse() {
+        this.losingCompleteResponse = true;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String key = objectKey(exchange);
+            Map<String, String> query = query(exchange);
+            String uploadId = query.get("uploadId");
+
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> {
+                    if (uploadId != null) {
+                        receivePart(exchange, uploadId, Integer.parseInt(query.get("partNumber")));
+                    } else {
+                        long received = drain(exchange);
+                        objects.put(key, received);
+                        exchange.getResponseHeaders().add("ETag", "\"" + Long.toHexString(received) + "\"");
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                }
+                case "POST" -> {
+                    drain(exchange);
+                    if (query.containsKey("uploads")) {
+                        String newUploadId = UUID.randomUUID().toString();
+                        multipartUploads.put(newUploadId, new AtomicLong());
+                        sendXml(exchange, "<InitiateMultipartUploadResult><Bucket>docseq</Bucket><Key>" + key
+                                + "</Key><UploadId>" + newUploadId + "</UploadId></InitiateMultipartUploadResult>");
+                    } else {
+                        completeMultipart(exchange, key, uploadId);
+                    }
+                }
+                case "HEAD" -> {
+                    Long size = objects.get(key);
+                    if (size == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                    } else {
+                        exchange.getResponseHeaders().add("Content-Length", Long.toString(size));
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                }
+                case "DELETE" -> {
+                    if (uploadId != null && multipartUploads.remove(uploadId) != null) {
+                        abortedUploads.incrementAndGet();
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> exchange.sendResponseHeaders(501, -1);
+            }
+        }
+    }
+
+    private void completeMultipart(HttpExchange exchange, String key, String uploadId) throws IOException {
+        completeRequests.incrementAndGet();
+
+        AtomicLong total = multipartUploads.remove(uploadId);
+        if (total == null) {
+            sendXml(exchange, 404, "<Error><Code>NoSuchUpload</Code><Message>unknown upload</Message></Error>");
+            return;
+        }
+
+        objects.put(key, total.get());
+        if (losingCompleteResponse) {
+            sendXml(exchange, 500, "<Error><Code>InternalError</Code><Message>lost</Message></Error>");
+            return;
+        }
+        sendXml(exchange, "<CompleteMultipartUploadResult><Bucket>docseq</Bucket><Key>" + key
+                + "</Key><ETag>\"done\"</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void receivePart(HttpExchange exchange, String uploadId, int partNumber) throws IOException {
+        if (partNumber == failingPart) {
+            drain(exchange);
+            sendXml(exchange, 400, "<Error><Code>InvalidPart</Code><Message>rejected</Message></Error>");
+            return;
+        }
+
+        maxPartsInFlight.accumulateAndGet(partsInFlight.incrementAndGet(), Math::max);
+        long received;
+        try {
+            received = drain(exchange);
+        } finally {
+            partsInFlight.decrementAndGet();
+        }
+        multipartUploads.get(uploadId).addAndGet(received);
+        partsReceived.incrementAndGet();
+        exchange.getResponseHeaders().add("ETag", "\"part-" + partNumber + "\"");
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void sendXml(HttpExchange exchange, String body) throws IOException {
+        sendXml(exchange, 200, body);
+    }
+
+    private void sendXml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new ConcurrentHashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            params.put(eq < 0 ? pair : pair.substring(0, eq), eq < 0 ? "" : pair.substring(eq + 1));
+        }
+        return params;
+    }
+
+    private String objectKey(HttpExchange exchange) {
+        // path-style: /<bucket>/<key>
+        String path = exchange.getRequestURI().getPath();
+        int slash = path.indexOf('/', 1);
+        return slash < 0 ? "" : path.substring(slash + 1);
+    }
+
+    private long drain(HttpExchange exchange) throws IOException {
+        InputStream body = new BufferedInputStream(new ThrottledInputStream(exchange.getRequestBody()), BUFFER_SIZE);
+        String sha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+
+        if (sha != null && sha.startsWith("STREAMING-")) {
+            return drainAwsChunked(body);
+        }
+        return body.transferTo(OutputStream.nullOutputStream());
+    }
+
+    // aws-chunked framing: "<hex-size>;chunk-signature=...\r\n<data>\r\n", ending with a 0-size chunk
+    private long drainAwsChunked(InputStream body) throws IOException {
+        long total = 0;
+        while (true) {
+            String header = readLine(body);
+            if (header == null) {
+                return total;
+            }
+            int semicolon = header.indexOf(';');
+            long size = Long.parseLong(semicolon < 0 ? header.trim() : header.substring(0, semicolon), 16);
+            if (size == 0) {
+                body.transferTo(OutputStream.nullOutputStream());
+                return total;
+            }
+            body.skipNBytes(size);
+            readLine(body);
+            total += size;
+        }
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return b == -1 && line.size() == 0 ? null : line.toString();
+    }
+
+    private final class ThrottledInputStream extends InputStream {
+
+        private final InputStream in;
+        private final long startNanos = System.nanoTime();
+        private long bytesRead;
+
+        ThrottledInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, Math.min(len, BUFFER_SIZE));
+            if (n > 0 && bytesPerSecondPerStream > 0) {
+                bytesRead += n;
+                long expectedNanos = bytesRead * 1_000_000_000L / bytesPerSecondPerStream;
+                long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+                if (aheadNanos > 0) {
+                    try {
+                        Thread.sleep(aheadNanos / 1_000_000, (int) (aheadNanos % 1_000_000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.nergal.docseq.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.context.ImportTestcontainers;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.nergal.docseq.config.PostgresContainers;
+import com.nergal.docseq.entities.File;
+import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.Town;
+import com.nergal.docseq.exception.QuotaExceededException;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.TownRepository;
+import com.nergal.docseq.repositories.TownUsageRepository;
+
+import jakarta.persistence.EntityManager;
+
+// Reservations commit on their own, so these tests run outside the usual test transaction
+@DataJpaTest(properties = "storage.quota.default=1KB")
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@ImportTestcontainers(PostgresContainers.class)
+@Import(StorageQuotaService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StorageQuotaServiceTest {
+
+    @Autowired
+    private StorageQuotaService storageQuotaService;
+
+    @Autowired
+    private TownUsageRepository townUsageRepository;
+
+    @Autowired
+    private TownRepository townRepository;
+
+    @Autowired
+    private FolderRepository folderRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Town town;
+
+    @BeforeEach
+    void setUp() {
+        town = new Town();
+        town.setName("Town " + UUID.randomUUID());
+        town.setUf("SP");
+        town.setImageUrl("town.png");
+        townRepository.save(town);
+    }
+
+    @Test
+    @DisplayName("A reservation within the quota should be kept once the upload succeeds")
+    void withReservation_shouldKeepBytes_WhenUploadSucceeds() {
+        String result = storageQuotaService.withReservation(town.getTownId(), 600, () -> "stored");
+
+        assertEquals("stored", result);
+        assertEquals(600, usedBytes());
+        assertEquals(0, reservedBytes());
+    }
+
+    @Test
+    @DisplayName("A reservation past the quota should be refused without touching the counter")
+    void withReservation_shouldRefuse_WhenQuotaWouldBeExceeded() {
+        storageQuotaService.withReservation(town.getTownId(), 600, () -> "stored");
+
+        assertThrows(QuotaExceededException.class,
+                () -> storageQuotaService.withReservation(town.getTownId(), 600, () -> "stored"));
+        assertEquals(600, usedBytes());
+    }
+
+    @Test
+    @DisplayName("A failed upload should give its reserved bytes back")
+    void withReservation_shouldGiveBack_WhenUploadFails() {
+        storageQuotaService.withReservation(town.getTownId(), 100, () -> "stored");
+
+        assertThrows(IllegalStateException.class, () -> storageQuotaService.withReservation(
+                town.getTownId(), 600, () -> {
+                    throw new IllegalStateException("storage is down");
+                }));
+        assertEquals(100, usedBytes());
+    }
+
+    @Test
+    @DisplayName("Reserving inside a transaction should fail instead of holding a second connection")
+    void withReservation_shouldRefuse_InsideATransaction() {
+        assertThrows(IllegalTransactionStateException.class, () -> transactionTemplate.executeWithoutResult(
+                status -> storageQuotaService.withReservation(town.getTownId(), 100, () -> "stored")));
+    }
+
+    @Test
+    @DisplayName("A held reservation should count as reserved until settled with its File rows")
+    void withHeldReservation_shouldStayReserved_UntilSettled() {
+        storageQuotaService.withHeldReservation(town.getTownId(), 300, () -> "stored");
+        assertEquals(300, reservedBytes());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            addFile(300);
+            storageQuotaService.settle(town.getTownId(), 300);
+        });
+
+        assertEquals(300, usedBytes());
+        assertEquals(0, reservedBytes());
+    }
+
+    @Test
+    @DisplayName("Reconciling should recompute a town from its files even right after an upload")
+    void reconcile_shouldRecomputeBusyTowns() {
+        storageQuotaService.withReservation(town.getTownId(), 900, () -> "stored");
+        addFile(40);
+
+        storageQuotaService.reconcile();
+
+        assertEquals(40, usedBytes());
+    }
+
+    @Test
+    @DisplayName("Reconciling should count a reservation in flight on top of the files")
+    void reconcile_shouldKeepReservationsInFlight() {
+        addFile(100);
+
+        assertThrows(IllegalStateException.class, () -> storageQuotaService.withHeldReservation(
+                town.getTownId(), 300, () -> {
+                    // the File row of this upload is not committed yet
+                    storageQuotaService.reconcile();
+                    assertEquals(400, usedBytes());
+                    throw new IllegalStateException("upload rolled back");
+                }));
+
+        assertEquals(100, usedBytes());
+        assertEquals(0, reservedBytes());
+    }
+
+    @Test
+    @DisplayName("Reconciling should drop a reservation left behind by a town idle past the grace")
+    void reconcile_shouldDropLeakedReservations() {
+        storageQuotaService.withHeldReservation(town.getTownId(), 300, () -> "stored");
+        touchedAt(Instant.now().minus(2, ChronoUnit.HOURS));
+
+        storageQuotaService.reconcile();
+
+        assertEquals(0, usedBytes());
+        assertEquals(0, reservedBytes());
+    }
+
+    @Test
+    @DisplayName("A reservation given back after a reconciliation should not be subtracted twice")
+    void reconcile_shouldNotDoubleCountAGiveBack() {
+        storageQuotaService.withReservation(town.getTownId(), 200, () -> "stored");
+        addFile(200);
+
+        assertThrows(IllegalStateException.class, () -> storageQuotaService.withHeldReservation(
+                town.getTownId(), 300, () -> {
+                    storageQuotaService.reconcile();
+                    throw new IllegalStateException("upload rolled back");
+                }));
+
+        assertEquals(200, usedBytes());
+    }
+
+    private long usedBytes() {
+        return townUsageRepository.findById(town.getTownId()).orElseThrow().getUsedBytes();
+    }
+
+    private long reservedBytes() {
+        return townUsageRepository.findById(town.getTownId()).orElseThrow().getReservedBytes();
+    }
+
+    private void addFile(long size) {
+        Folder folder = new Folder();
+        folder.setName("folder");
+        folder.setTown(town);
+        folderRepository.save(folder);
+
+        File file = new File();
+        file.setName("file.pdf");
+        file.setContentType("application/pdf");
+        file.setSize(size);
+        file.setObjectKey("uploads/" + UUID.randomUUID() + ".pdf");
+        file.setFolder(folder);
+        file.setTown(town);
+        fileRepository.save(file);
+    }
+
+    private void touchedAt(Instant updatedAt) {
+        transactionTemplate.executeWithoutResult(status -> entityManager
+                .createNativeQuery("UPDATE tb_town_usage SET updated_at = :updatedAt WHERE town_id = :townId")
+                .setParameter("updatedAt", updatedAt)
+                .setParameter("townId", town.getTownId())
+                .executeUpdate());
+    }
+}
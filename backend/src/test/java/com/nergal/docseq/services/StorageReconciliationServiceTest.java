@@ -0,0 +1,163 @@
+package com.nergal.docseq.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nergal.docseq.dto.storage.StoredObjectSummaryDTO;
+import com.nergal.docseq.entities.StorageDeletion;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.StorageDeletionRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class StorageReconciliationServiceTest {
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(7));
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private StorageDeletionRepository storageDeletionRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // the bucket, and the object and thumbnail keys of tb_files
+    private final NavigableMap<String, Instant> objects = new TreeMap<>();
+    private final NavigableSet<String> objectKeys = new TreeSet<>();
+    private final NavigableSet<String> thumbnailKeys = new TreeSet<>();
+
+    private StorageReconciliationService storageReconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        storageReconciliationService = new StorageReconciliationService(
+                storageService,
+                fileRepository,
+                storageDeletionRepository,
+                new TransactionTemplate(transactionManager),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(storageReconciliationService, "enabled", true);
+        ReflectionTestUtils.setField(storageReconciliationService, "dryRun", false);
+        ReflectionTestUtils.setField(storageReconciliationService, "grace", Duration.ofHours(24));
+        ReflectionTestUtils.setField(storageReconciliationService, "maxDeletions", 100);
+        ReflectionTestUtils.setField(storageReconciliationService, "pageDelay", Duration.ZERO);
+        ReflectionTestUtils.setField(storageReconciliationService, "pageSize", 2);
+
+        objects.put("staging/upload", OLD);
+        objects.put("uploads/a.pdf", OLD);
+        objects.put("uploads/b.pdf", OLD);
+        objects.put("uploads/b.png", OLD);
+        objects.put("uploads/c.pdf", OLD);
+        objects.put("uploads/d.pdf", Instant.now());
+        objectKeys.add("uploads/b.pdf");
+        objectKeys.add("uploads/e.pdf");
+        thumbnailKeys.add("uploads/b.png");
+    }
+
+    @Test
+    @DisplayName("Merging should keep both lists in order without duplicates")
+    void merge_shouldInterleaveAndDropDuplicates() {
+        assertEquals(List.of("a", "b", "c"),
+                StorageReconciliationService.merge(List.of("a", "c"), List.of("b", "c"), 3));
+    }
+
+    @Test
+    @DisplayName("Merging should stop at the last key of a full page")
+    void merge_shouldTrimPastTheLastKeyOfAFullPage() {
+        // the first list's next page may hold keys between "c" and "d"
+        assertEquals(List.of("a", "c"),
+                StorageReconciliationService.merge(List.of("a", "c"), List.of("d"), 2));
+        // with both pages full, the smaller of their last keys bounds the result
+        assertEquals(List.of("a", "b", "c"),
+                StorageReconciliationService.merge(List.of("a", "c"), List.of("b", "d"), 2));
+        assertEquals(List.of("a", "b", "d"),
+                StorageReconciliationService.merge(List.of("a", "d"), List.of("b"), 2));
+    }
+
+    @Test
+    @DisplayName("A sweep should queue old objects no file points to, across pages")
+    void sweep_shouldQueueOnlyUnreferencedOldObjects() {
+        stubListings();
+
+        storageReconciliationService.sweep();
+
+        assertEquals(List.of("uploads/a.pdf", "uploads/c.pdf"), queuedKeys());
+    }
+
+    @Test
+    @DisplayName("An interrupted sweep should stop without queueing anything")
+    void sweep_shouldQueueNothing_WhenInterrupted() {
+        stubListings();
+        ReflectionTestUtils.setField(storageReconciliationService, "pageDelay", Duration.ofMillis(1));
+
+        Thread.currentThread().interrupt();
+        storageReconciliationService.sweep();
+
+        assertTrue(Thread.interrupted());
+        verify(storageDeletionRepository, never()).saveAll(any());
+    }
+
+    // Pages of the bucket and of tb_files, served from the sets above
+    private void stubListings() {
+        when(storageService.list(nullable(String.class), anyInt())).thenAnswer(invocation -> {
+            String after = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return (after == null ? objects : objects.tailMap(after, false)).entrySet().stream()
+                    .limit(limit)
+                    .map(e -> new StoredObjectSummaryDTO(e.getKey(), 1, e.getValue()))
+                    .toList();
+        });
+        when(fileRepository.findObjectKeysAfter(anyString(), anyInt()))
+                .thenAnswer(invocation -> page(objectKeys, invocation.getArgument(0), invocation.getArgument(1)));
+        when(fileRepository.findThumbnailKeysAfter(anyString(), anyInt()))
+                .thenAnswer(invocation -> page(thumbnailKeys, invocation.getArgument(0), invocation.getArgument(1)));
+    }
+
+    private List<String> queuedKeys() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StorageDeletion>> saved = ArgumentCaptor.forClass(List.class);
+        verify(storageDeletionRepository, atLeastOnce()).saveAll(saved.capture());
+
+        List<String> keys = new ArrayList<>();
+        saved.getAllValues().forEach(batch -> batch.forEach(deletion -> keys.add(deletion.getObjectKey())));
+        return keys;
+    }
+
+    private static List<String> page(NavigableSet<String> keys, String after, int limit) {
+        return keys.tailSet(after, false).stream().limit(limit).toList();
+    }
+}
@@ -0,0 +1,197 @@
+package com.nergal.docseq.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.nergal.docseq.dto.files.UploadSessionResponseDTO;
+import com.nergal.docseq.entities.Town;
+import com.nergal.docseq.entities.UploadSession;
+import com.nergal.docseq.entities.User;
+import com.nergal.docseq.exception.BadRequestException;
+import com.nergal.docseq.exception.ConflictException;
+import com.nergal.docseq.exception.UnprocessableContentException;
+import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.UploadSessionRepository;
+import com.nergal.docseq.repositories.UserRepository;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTest {
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private FolderRepository folderRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private StorageQuotaService storageQuotaService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path directory;
+
+    private UploadSessionService uploadSessionService;
+    private JwtAuthenticationToken token;
+    private UploadSession session;
+    private UUID sessionId;
+
+    @BeforeEach
+    void setUp() {
+        uploadSessionService = new UploadSessionService(
+                uploadSessionRepository,
+                folderRepository,
+                userRepository,
+                fileService,
+                new TransactionTemplate(transactionManager),
+                storageQuotaService);
+        ReflectionTestUtils.setField(uploadSessionService, "directory", directory.toString());
+        ReflectionTestUtils.setField(uploadSessionService, "maxSize", DataSize.ofMegabytes(200));
+        ReflectionTestUtils.setField(uploadSessionService, "maxChunkSize", DataSize.ofBytes(4));
+        ReflectionTestUtils.setField(uploadSessionService, "ttl", Duration.ofHours(24));
+
+        Town town = new Town();
+        town.setTownId(UUID.randomUUID());
+
+        User user = new User();
+        user.setUserId(UUID.randomUUID());
+        user.setTown(town);
+
+        token = new JwtAuthenticationToken(
+                Jwt.withTokenValue("token").header("alg", "none").claim("sub", user.getUserId().toString()).build());
+
+        sessionId = UUID.randomUUID();
+        session = session(sessionId, Instant.now().plus(Duration.ofHours(1)));
+        session.setTown(town);
+        session.setUploadedBy(user);
+
+        when(userRepository.getReferenceById(user.getUserId())).thenReturn(user);
+        when(uploadSessionRepository.findBySessionIdAndTownTownId(sessionId, town.getTownId()))
+                .thenReturn(Optional.of(session));
+    }
+
+    @Test
+    @DisplayName("Should ignore a re-sent chunk and append the next one at the received offset")
+    void shouldResumeFromTheReceivedOffset() throws Exception {
+        when(uploadSessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+
+        append(0, "abcd");
+
+        // an interrupted attempt at chunk 1 left bytes past the offset
+        Files.write(stagingFile(), "xy".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        UploadSessionResponseDTO resent = append(0, "abcd");
+        assertEquals(4L, resent.receivedBytes());
+        assertEquals(1, resent.nextChunk());
+
+        UploadSessionResponseDTO response = append(1, "efgh");
+        assertEquals(8L, response.receivedBytes());
+        assertEquals(2, response.nextChunk());
+        assertArrayEquals("abcdefgh".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(stagingFile()));
+    }
+
+    @Test
+    @DisplayName("Should reject a chunk ahead of the received offset")
+    void shouldRejectAChunkOutOfOrder() {
+        when(uploadSessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+
+        assertThrows(ConflictException.class, () -> append(1, "efgh"));
+        assertEquals(0, session.getNextChunk());
+    }
+
+    @Test
+    @DisplayName("Should drop a chunk that does not match its checksum and keep the offset")
+    void shouldDropAChunkWithAChecksumMismatch() throws Exception {
+        when(uploadSessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+        append(0, "abcd");
+
+        byte[] body = "efgh".getBytes(StandardCharsets.UTF_8);
+        assertThrows(UnprocessableContentException.class, () -> uploadSessionService.appendChunk(
+                sessionId, 1, sha256("wxyz".getBytes(StandardCharsets.UTF_8)), new ByteArrayInputStream(body), token));
+
+        assertEquals(4L, session.getReceivedBytes());
+        assertEquals(1, session.getNextChunk());
+        assertArrayEquals("abcd".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(stagingFile()));
+    }
+
+    @Test
+    @DisplayName("Should drop a chunk when another instance moved the session meanwhile")
+    void shouldDropAChunkWhenTheSessionChangedConcurrently() throws Exception {
+        UploadSession changed = session(sessionId, session.getExpiresAt());
+        ReflectionTestUtils.setField(changed, "version", 1L);
+        when(uploadSessionRepository.findById(sessionId)).thenReturn(Optional.of(session), Optional.of(changed));
+
+        assertThrows(ConflictException.class, () -> append(0, "abcd"));
+
+        assertEquals(0L, session.getReceivedBytes());
+        assertEquals(0L, Files.size(stagingFile()));
+    }
+
+    @Test
+    @DisplayName("Should reject chunks for an expired session")
+    void shouldRejectAnExpiredSession() {
+        session.setExpiresAt(Instant.now().minusSeconds(1));
+
+        assertThrows(BadRequestException.class, () -> append(0, "abcd"));
+        assertFalse(Files.exists(stagingFile()));
+    }
+
+    private UploadSessionResponseDTO append(int chunk, String content) throws Exception {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        return uploadSessionService.appendChunk(sessionId, chunk, sha256(body), new ByteArrayInputStream(body), token);
+    }
+
+    private Path stagingFile() {
+        return uploadSessionService.stagingPath(sessionId);
+    }
+
+    private static UploadSession session(UUID sessionId, Instant expiresAt) {
+        UploadSession session = new UploadSession();
+        ReflectionTestUtils.setField(session, "sessionId", sessionId);
+        session.setName("document.pdf");
+        session.setSize(8L);
+        session.setContentType("application/pdf");
+        session.setExpiresAt(expiresAt);
+        return session;
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
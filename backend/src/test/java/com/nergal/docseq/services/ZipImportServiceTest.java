@@ -0,0 +1,245 @@
+package com.nergal.docseq.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import com.nergal.docseq.dto.files.ZipImportEntryDTO;
+import com.nergal.docseq.dto.files.ZipImportEntryDTO.Status;
+import com.nergal.docseq.dto.files.ZipImportSummaryDTO;
+import com.nergal.docseq.entities.Blob;
+import com.nergal.docseq.entities.File;
+import com.nergal.docseq.entities.Folder;
+import com.nergal.docseq.entities.Town;
+import com.nergal.docseq.entities.User;
+import com.nergal.docseq.repositories.FileRepository;
+import com.nergal.docseq.repositories.FolderRepository;
+import com.nergal.docseq.repositories.TownRepository;
+import com.nergal.docseq.repositories.UserRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ZipImportServiceTest {
+
+    private static final String PDF = "%PDF-1.7 body";
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private FolderRepository folderRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private TownRepository townRepository;
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private BlobService blobService;
+
+    @Mock
+    private StorageQuotaService storageQuotaService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ZipImportService zipImportService;
+    private JwtAuthenticationToken token;
+    private Town town;
+    private Folder target;
+    private final List<ZipImportEntryDTO> progress = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        zipImportService = new ZipImportService(
+                fileRepository,
+                folderRepository,
+                userRepository,
+                townRepository,
+                fileService,
+                blobService,
+                new TransactionTemplate(transactionManager),
+                storageQuotaService,
+                eventPublisher);
+        // one entry at a time, so what was stored before a failure is known
+        ReflectionTestUtils.setField(zipImportService, "concurrency", 1);
+        ReflectionTestUtils.setField(zipImportService, "batchSize", 100);
+        ReflectionTestUtils.setField(zipImportService, "maxEntries", 100);
+        ReflectionTestUtils.setField(zipImportService, "maxEntrySize", DataSize.ofBytes(64));
+
+        town = new Town();
+        town.setTownId(UUID.randomUUID());
+
+        User user = new User();
+        user.setUserId(UUID.randomUUID());
+        user.setTown(town);
+
+        target = new Folder();
+        ReflectionTestUtils.setField(target, "folderId", UUID.randomUUID());
+        target.setName("imports");
+        target.setTown(town);
+
+        token = new JwtAuthenticationToken(
+                Jwt.withTokenValue("token").header("alg", "none").claim("sub", user.getUserId().toString()).build());
+
+        when(userRepository.findById(user.getUserId())).thenReturn(Optional.of(user));
+        when(folderRepository.findByFolderIdAndTownTownIdAndDeletedAtIsNull(target.getFolderId(), town.getTownId()))
+                .thenReturn(Optional.of(target));
+    }
+
+    @Test
+    @DisplayName("Should skip traversal, absolute, drive and archiver metadata paths")
+    void importZip_shouldSkipUnsafePaths() throws IOException {
+        stubStorage();
+        when(folderRepository.findByFolderIdAndDeletedAtIsNull(target.getFolderId())).thenReturn(Optional.of(target));
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("../escape.pdf", PDF);
+        entries.put("docs/../../escape.pdf", PDF);
+        entries.put("/etc/absolute.pdf", PDF);
+        entries.put("C:/Windows/drive.pdf", PDF);
+        entries.put("..\\backslash.pdf", PDF);
+        entries.put("__MACOSX/docs/._kept.pdf", PDF);
+        entries.put(".hidden.pdf", PDF);
+        entries.put("docs/kept.pdf", PDF);
+
+        ZipImportSummaryDTO summary = importZip(zip(entries), progress::add);
+
+        assertEquals(1, summary.imported());
+        assertEquals(7, summary.skipped());
+        assertEquals(1, summary.foldersCreated());
+        assertEquals(List.of("docs/kept.pdf"), paths(Status.IMPORTED));
+        assertEquals(List.copyOf(entries.keySet()).subList(0, 7), paths(Status.SKIPPED));
+    }
+
+    @Test
+    @DisplayName("Should fail entries that do not start like a PDF, are empty or exceed the size limit")
+    void importZip_shouldRejectEntriesWhileSpooling() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("renamed.pdf", "GIF89a not a pdf");
+        entries.put("empty.pdf", "%PD");
+        entries.put("large.pdf", PDF + "x".repeat(64));
+
+        ZipImportSummaryDTO summary = importZip(zip(entries), progress::add);
+
+        assertEquals(0, summary.imported());
+        assertEquals(List.of("Not a PDF", "File is empty", "File is too large"),
+                summary.failures().stream().map(ZipImportEntryDTO::error).toList());
+        verifyNoInteractions(storageQuotaService, blobService);
+    }
+
+    @Test
+    @DisplayName("Should give back quota and blob references of stored entries when the import aborts")
+    void importZip_shouldReleaseStoredEntries_WhenAborted() throws IOException {
+        stubStorage();
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("stored.pdf", PDF);
+        entries.put("notes.txt", "skipped, and reporting it fails");
+
+        // as when the client reading the progress stream goes away
+        Consumer<ZipImportEntryDTO> disconnected = result -> {
+            throw new IllegalStateException("client disconnected");
+        };
+
+        byte[] archive = zip(entries);
+        assertThrows(IllegalStateException.class, () -> importZip(archive, disconnected));
+
+        verify(fileRepository, never()).saveAll(any());
+        verify(blobService).releaseAll(argThat(files -> files.size() == 1));
+        verify(storageQuotaService).giveBack(eq(town.getTownId()), eq((long) PDF.length()));
+    }
+
+    @Test
+    @DisplayName("Should give back quota and blob references when a batch cannot be inserted")
+    void importZip_shouldReleaseTheBatch_WhenItsInsertFails() throws IOException {
+        stubStorage();
+        when(fileRepository.saveAll(any())).thenThrow(new IllegalStateException("database is down"));
+
+        ZipImportSummaryDTO summary = importZip(zip(Map.of("stored.pdf", PDF)), progress::add);
+
+        assertEquals(List.of("Could not save file"),
+                summary.failures().stream().map(ZipImportEntryDTO::error).toList());
+        verify(blobService).releaseAll(argThat(files -> files.size() == 1));
+        verify(storageQuotaService).giveBack(eq(town.getTownId()), eq((long) PDF.length()));
+        verify(storageQuotaService, never()).settle(any(), anyLong());
+    }
+
+    // Stored entries get a blob and an unsaved File, as the real services would produce
+    @SuppressWarnings("unchecked")
+    private void stubStorage() {
+        when(storageQuotaService.withHeldReservation(eq(town.getTownId()), anyLong(), any()))
+                .thenAnswer(invocation -> ((Supplier<Blob>) invocation.getArgument(2)).get());
+        when(blobService.store(any())).thenReturn(new Blob());
+        when(fileService.newFile(anyString(), anyLong(), anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    File file = new File();
+                    file.setName(invocation.getArgument(0));
+                    file.setSize(invocation.getArgument(1));
+                    return file;
+                });
+    }
+
+    private ZipImportSummaryDTO importZip(byte[] archive, Consumer<ZipImportEntryDTO> listener) {
+        return zipImportService.importZip(new ByteArrayInputStream(archive), target.getFolderId(), token, listener);
+    }
+
+    private List<String> paths(Status status) {
+        return progress.stream().filter(p -> p.status() == status).map(ZipImportEntryDTO::path).toList();
+    }
+
+    private static byte[] zip(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}